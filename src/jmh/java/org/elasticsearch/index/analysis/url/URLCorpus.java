@@ -0,0 +1,164 @@
+package org.elasticsearch.index.analysis.url;
+
+import java.util.Random;
+
+/**
+ * Deterministically generated URL corpora for benchmarks. Each corpus holds {@link #SIZE} URLs, a power of two so that
+ * benchmarks can cycle through them with a mask.
+ */
+enum URLCorpus {
+    /**
+     * URLs as they appear in web server access logs and referrer headers
+     */
+    ACCESS_LOG {
+        @Override
+        String url(Random random) {
+            StringBuilder url = new StringBuilder();
+            url.append(random.nextInt(4) == 0 ? "http://" : "https://");
+            url.append(pick(random, HOSTS));
+            if (random.nextInt(10) == 0) {
+                url.append(':').append(pick(random, PORTS));
+            }
+            appendPath(random, url, 1 + random.nextInt(5));
+            if (random.nextBoolean()) {
+                appendQuery(random, url, 1 + random.nextInt(4));
+            }
+            if (random.nextInt(8) == 0) {
+                url.append('#').append(pick(random, SEGMENTS));
+            }
+            return url.toString();
+        }
+    },
+
+    /**
+     * URLs carrying long tracking and search query strings
+     */
+    LONG_QUERY {
+        @Override
+        String url(Random random) {
+            StringBuilder url = new StringBuilder("https://");
+            url.append(pick(random, HOSTS));
+            appendPath(random, url, 1 + random.nextInt(3));
+            appendQuery(random, url, 20 + random.nextInt(40));
+            return url.toString();
+        }
+    },
+
+    /**
+     * URLs whose hosts are IPv4 or IPv6 addresses
+     */
+    IP_HOST {
+        @Override
+        String url(Random random) {
+            StringBuilder url = new StringBuilder("http://");
+            if (random.nextInt(4) == 0) {
+                url.append("[2001:db8:").append(Integer.toHexString(random.nextInt(0xffff))).append("::")
+                        .append(Integer.toHexString(1 + random.nextInt(0xffff))).append(']');
+            } else {
+                url.append(10 + random.nextInt(200)).append('.').append(random.nextInt(256)).append('.')
+                        .append(random.nextInt(256)).append('.').append(1 + random.nextInt(254));
+            }
+            if (random.nextBoolean()) {
+                url.append(':').append(pick(random, PORTS));
+            }
+            appendPath(random, url, 1 + random.nextInt(3));
+            if (random.nextBoolean()) {
+                appendQuery(random, url, 1 + random.nextInt(3));
+            }
+            return url.toString();
+        }
+    },
+
+    /**
+     * Strings which are not well formed URLs: missing protocols, bare paths, and junk
+     */
+    MALFORMED {
+        @Override
+        String url(Random random) {
+            StringBuilder url = new StringBuilder();
+            switch (random.nextInt(5)) {
+                case 0:
+                    url.append(pick(random, HOSTS));
+                    appendPath(random, url, 1 + random.nextInt(4));
+                    break;
+                case 1:
+                    url.append(pick(random, HOSTS)).append(':').append(pick(random, PORTS));
+                    appendPath(random, url, 1 + random.nextInt(2));
+                    appendQuery(random, url, 1 + random.nextInt(3));
+                    break;
+                case 2:
+                    appendPath(random, url, 1 + random.nextInt(4));
+                    url.append('#').append(pick(random, SEGMENTS));
+                    appendQuery(random, url, 1 + random.nextInt(3));
+                    break;
+                case 3:
+                    url.append("://").append(pick(random, HOSTS));
+                    appendPath(random, url, 1);
+                    break;
+                default:
+                    url.append("http://").append(":::").append(pick(random, SEGMENTS));
+                    appendPath(random, url, 1 + random.nextInt(2));
+            }
+            return url.toString();
+        }
+    };
+
+    static final int SIZE = 1024;
+
+    private static final String[] HOSTS = {"www.example.com", "example.com", "cdn.static.example.net", "api.shop.example.co.uk",
+            "images.google.com", "m.facebook.com", "en.wikipedia.org", "news.ycombinator.com", "t.co", "localhost"};
+
+    private static final String[] PORTS = {"80", "443", "8080", "9200", "8443"};
+
+    private static final String[] SEGMENTS = {"index.html", "products", "category", "search", "user", "profile", "api",
+            "v1", "v2", "images", "2017", "08", "article-title-with-many-words", "checkout", "cart", "item", "12345"};
+
+    private static final String[] PARAMS = {"q", "id", "page", "sort", "utm_source", "utm_medium", "utm_campaign", "ref",
+            "session", "lang", "redirect", "email", "fbclid", "gclid"};
+
+    private static final String[] VALUES = {"1", "42", "desc", "google", "cpc", "spring_sale", "en-US", "foo%20bar",
+            "foo%40bar.com", "https%3A%2F%2Fwww.example.com%2Fcart", "a+b+c", "IwAR2xK7Lw0", "%E2%9C%93", "true"};
+
+    abstract String url(Random random);
+
+
+    static URLCorpus fromString(String corpus) {
+        return valueOf(corpus.toUpperCase());
+    }
+
+
+    /**
+     * @return the urls of this corpus. The same urls are generated on every call.
+     */
+    String[] urls() {
+        final Random random = new Random(ordinal());
+        final String[] urls = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            urls[i] = url(random);
+        }
+        return urls;
+    }
+
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+
+    private static void appendPath(Random random, StringBuilder url, int segments) {
+        for (int i = 0; i < segments; i++) {
+            url.append('/').append(pick(random, SEGMENTS));
+        }
+    }
+
+
+    private static void appendQuery(Random random, StringBuilder url, int params) {
+        url.append('?');
+        for (int i = 0; i < params; i++) {
+            if (i > 0) {
+                url.append('&');
+            }
+            url.append(pick(random, PARAMS)).append('=').append(pick(random, VALUES));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.elasticsearch.index.analysis.URLPart;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a reused {@link URLTokenFilter} fed by a {@link KeywordTokenizer}. Each operation filters
+ * a single url from the corpus.
+ *
+ * By default, all parts are tokenized, with <code>url_decode</code> and <code>allow_malformed</code> on and off, across
+ * all corpora. Other combinations of options are run by passing their values with JMH's <code>-p</code> option.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class URLTokenFilterBenchmark {
+    @Param({"all"})
+    public String part;
+
+    @Param({"false", "true"})
+    public boolean urlDecode;
+
+    @Param({"true"})
+    public boolean tokenizeHost;
+
+    @Param({"true"})
+    public boolean tokenizePath;
+
+    @Param({"true"})
+    public boolean tokenizeQuery;
+
+    @Param({"false", "true"})
+    public boolean allowMalformed;
+
+    @Param({"true"})
+    public boolean tokenizeMalformed;
+
+    @Param({"false"})
+    public boolean passthrough;
+
+    @Param({"access_log", "long_query", "ip_host", "malformed"})
+    public String corpus;
+
+    private String[] urls;
+    private int index;
+
+    private final ReusableStringReader reader = new ReusableStringReader();
+    private Tokenizer tokenizer;
+    private URLTokenFilter filter;
+
+
+    @Setup
+    public void setUp() {
+        urls = URLCorpus.fromString(corpus).urls();
+        tokenizer = new KeywordTokenizer();
+        filter = new URLTokenFilter(tokenizer, part.equals("all") ? null : URLPart.fromString(part), urlDecode,
+                allowMalformed, passthrough)
+                .setTokenizeHost(tokenizeHost)
+                .setTokenizePath(tokenizePath)
+                .setTokenizeQuery(tokenizeQuery)
+                .setTokenizeMalformed(tokenizeMalformed);
+    }
+
+
+    @Benchmark
+    public void filter(Blackhole blackhole) throws IOException {
+        reader.setValue(urls[index++ & (URLCorpus.SIZE - 1)]);
+        tokenizer.setReader(reader);
+        URLTokenizerBenchmark.consume(filter, blackhole);
+    }
+}
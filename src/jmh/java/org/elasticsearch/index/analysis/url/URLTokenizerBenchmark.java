@@ -0,0 +1,100 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.elasticsearch.index.analysis.URLPart;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a reused {@link URLTokenizer}. Each operation tokenizes a single url from the corpus.
+ *
+ * By default, all parts are tokenized, with <code>url_decode</code> and <code>allow_malformed</code> on and off, across
+ * all corpora. Other combinations of options are run by passing their values with JMH's <code>-p</code> option.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class URLTokenizerBenchmark {
+    @Param({"all"})
+    public String part;
+
+    @Param({"false", "true"})
+    public boolean urlDecode;
+
+    @Param({"true"})
+    public boolean tokenizeHost;
+
+    @Param({"true"})
+    public boolean tokenizePath;
+
+    @Param({"true"})
+    public boolean tokenizeQuery;
+
+    @Param({"false", "true"})
+    public boolean allowMalformed;
+
+    @Param({"true"})
+    public boolean tokenizeMalformed;
+
+    @Param({"access_log", "long_query", "ip_host", "malformed"})
+    public String corpus;
+
+    private String[] urls;
+    private int index;
+
+    private final ReusableStringReader reader = new ReusableStringReader();
+    private URLTokenizer tokenizer;
+
+
+    @Setup
+    public void setUp() {
+        urls = URLCorpus.fromString(corpus).urls();
+        tokenizer = new URLTokenizer();
+        if (!part.equals("all")) {
+            tokenizer.setPart(URLPart.fromString(part));
+        }
+        tokenizer.setUrlDecode(urlDecode);
+        tokenizer.setTokenizeHost(tokenizeHost);
+        tokenizer.setTokenizePath(tokenizePath);
+        tokenizer.setTokenizeQuery(tokenizeQuery);
+        tokenizer.setAllowMalformed(allowMalformed);
+        tokenizer.setTokenizeMalformed(tokenizeMalformed);
+    }
+
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) throws IOException {
+        reader.setValue(urls[index++ & (URLCorpus.SIZE - 1)]);
+        tokenizer.setReader(reader);
+        consume(tokenizer, blackhole);
+    }
+
+
+    /**
+     * Consume all tokens of the given stream. Malformed urls are counted rather than allowed to fail the benchmark.
+     */
+    static void consume(TokenStream stream, Blackhole blackhole) throws IOException {
+        final CharTermAttribute term = stream.getAttribute(CharTermAttribute.class);
+        final OffsetAttribute offset = stream.getAttribute(OffsetAttribute.class);
+        try {
+            stream.reset();
+            while (stream.incrementToken()) {
+                blackhole.consume(term.length());
+                blackhole.consume(offset.endOffset());
+            }
+            stream.end();
+        } catch (IOException e) {
+            blackhole.consume(e);
+        } finally {
+            stream.close();
+        }
+    }
+}
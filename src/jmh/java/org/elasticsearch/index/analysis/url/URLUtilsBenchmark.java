@@ -0,0 +1,42 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link URLUtils#getPart(String, URLPart)}, which underlies the handling of malformed urls.
+ * Each operation retrieves a single part of a single url from the corpus.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class URLUtilsBenchmark {
+    @Param({"protocol", "host", "port", "path", "query", "ref", "whole"})
+    public String part;
+
+    @Param({"access_log", "long_query", "ip_host", "malformed"})
+    public String corpus;
+
+    private String[] urls;
+    private URLPart urlPart;
+    private int index;
+
+
+    @Setup
+    public void setUp() {
+        urls = URLCorpus.fromString(corpus).urls();
+        urlPart = URLPart.fromString(part);
+    }
+
+
+    @Benchmark
+    public Optional<String> getPart() {
+        return URLUtils.getPart(urls[index++ & (URLCorpus.SIZE - 1)], urlPart);
+    }
+}
@@ -0,0 +1,30 @@
+package org.elasticsearch.index.analysis;
+
+/**
+ * What a url domain list token filter does with urls whose hosts are in its list
+ */
+public enum DomainListMode {
+    /**
+     * Keep only urls whose hosts are in the list, as for an allow list
+     */
+    KEEP,
+
+    /**
+     * Drop urls whose hosts are in the list, as for a block list
+     */
+    DROP,
+
+    /**
+     * Keep all urls, following each url whose host is in the list with a tag token at the same position
+     */
+    TAG;
+
+    public static DomainListMode fromString(String mode) {
+        for (DomainListMode domainListMode : DomainListMode.values()) {
+            if (domainListMode.name().equalsIgnoreCase(mode)) {
+                return domainListMode;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unrecognized domain list mode: %s", mode));
+    }
+}
@@ -0,0 +1,36 @@
+package org.elasticsearch.index.analysis;
+
+/**
+ * Which characters of a url are hashed into the fixed width hash token emitted by url tokenizers and token filters
+ */
+public enum HashMode {
+    /**
+     * No hash token is emitted
+     */
+    NONE,
+
+    /**
+     * The whole url, as it was given
+     */
+    WHOLE,
+
+    /**
+     * The host followed by the path, so that urls differing only in their scheme, port, query string, or ref share a
+     * hash
+     */
+    HOST_PATH,
+
+    /**
+     * The canonical form of the url, as produced by the url_canonicalize token filter
+     */
+    CANONICAL;
+
+    public static HashMode fromString(String mode) {
+        for (HashMode hashMode : HashMode.values()) {
+            if (hashMode.name().equalsIgnoreCase(mode)) {
+                return hashMode;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unrecognized hash mode: %s", mode));
+    }
+}
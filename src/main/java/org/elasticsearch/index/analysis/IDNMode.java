@@ -0,0 +1,30 @@
+package org.elasticsearch.index.analysis;
+
+/**
+ * The form to which url tokenizers and token filters convert internationalized host names
+ */
+public enum IDNMode {
+    /**
+     * Hosts are left as they are written
+     */
+    NONE,
+
+    /**
+     * Unicode hosts are converted to their ASCII compatible (punycode) form, such as <code>xn--bcher-kva.example</code>
+     */
+    ASCII,
+
+    /**
+     * Hosts with ASCII compatible labels are converted to their Unicode form, such as <code>b&uuml;cher.example</code>
+     */
+    UNICODE;
+
+    public static IDNMode fromString(String mode) {
+        for (IDNMode idnMode : IDNMode.values()) {
+            if (idnMode.name().equalsIgnoreCase(mode)) {
+                return idnMode;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unrecognized IDN mode: %s", mode));
+    }
+}
@@ -0,0 +1,32 @@
+package org.elasticsearch.index.analysis;
+
+/**
+ * What is done with a url or token which exceeds the length limits of a url tokenizer or token filter, or with the
+ * tokens of a url which produces too many of them
+ */
+public enum OversizePolicy {
+    /**
+     * Keep the first characters of the url or token, or the first tokens of the url, up to the limit
+     */
+    TRUNCATE,
+
+    /**
+     * Replace the url or token with a token holding a hash of its characters. Urls which produce too many tokens are
+     * truncated.
+     */
+    HASH,
+
+    /**
+     * Emit nothing for the url or token. Urls which produce too many tokens emit no tokens at all.
+     */
+    SKIP;
+
+    public static OversizePolicy fromString(String policy) {
+        for (OversizePolicy oversizePolicy : OversizePolicy.values()) {
+            if (oversizePolicy.name().equalsIgnoreCase(policy)) {
+                return oversizePolicy;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unrecognized oversize policy: %s", policy));
+    }
+}
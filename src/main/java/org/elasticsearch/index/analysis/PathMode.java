@@ -0,0 +1,30 @@
+package org.elasticsearch.index.analysis;
+
+/**
+ * How the path of a url is tokenized when <code>tokenize_path</code> is true
+ */
+public enum PathMode {
+    /**
+     * Each prefix of the path ending before a <code>/</code>, followed by the whole path
+     */
+    HIERARCHY,
+
+    /**
+     * Each non-empty segment of the path, at consecutive positions
+     */
+    SEGMENTS,
+
+    /**
+     * Prefixes of the path, as by {@link #HIERARCHY}, up to a maximum depth, followed by the whole path
+     */
+    HYBRID;
+
+    public static PathMode fromString(String mode) {
+        for (PathMode pathMode : PathMode.values()) {
+            if (pathMode.name().equalsIgnoreCase(mode)) {
+                return pathMode;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unrecognized path mode: %s", mode));
+    }
+}
@@ -0,0 +1,20 @@
+package org.elasticsearch.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.url.URLCanonicalizeFilter;
+
+public class URLCanonicalizeFilterFactory extends AbstractTokenFilterFactory {
+
+    public URLCanonicalizeFilterFactory(IndexSettings indexSettings, Environment environment, String name, Settings settings) {
+        super(indexSettings, name, settings);
+    }
+
+
+    @Override
+    public TokenStream create(TokenStream tokenStream) {
+        return new URLCanonicalizeFilter(tokenStream);
+    }
+}
@@ -0,0 +1,36 @@
+package org.elasticsearch.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.url.CategoryDictionary;
+import org.elasticsearch.index.analysis.url.URLCategoryFilter;
+
+import java.io.IOException;
+
+public class URLCategoryFilterFactory extends AbstractTokenFilterFactory {
+    private final CategoryDictionary dictionary;
+    private final String prefix;
+
+
+    public URLCategoryFilterFactory(IndexSettings indexSettings, Environment environment, String name, Settings settings) {
+        super(indexSettings, name, settings);
+        final String path = settings.get("category_dictionary");
+        if (path == null) {
+            throw new IllegalArgumentException("[category_dictionary] must be set for filter [" + name + "]");
+        }
+        try {
+            this.dictionary = CategoryDictionary.load(environment.configFile().resolve(path));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to load category dictionary [" + path + "]", e);
+        }
+        this.prefix = settings.get("prefix", "category:");
+    }
+
+
+    @Override
+    public TokenStream create(TokenStream tokenStream) {
+        return new URLCategoryFilter(tokenStream, dictionary, prefix);
+    }
+}
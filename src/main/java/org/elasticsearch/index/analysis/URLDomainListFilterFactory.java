@@ -0,0 +1,38 @@
+package org.elasticsearch.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.url.DomainList;
+import org.elasticsearch.index.analysis.url.URLDomainListFilter;
+
+import java.io.IOException;
+
+public class URLDomainListFilterFactory extends AbstractTokenFilterFactory {
+    private final DomainList domainList;
+    private final DomainListMode mode;
+    private final String tag;
+
+
+    public URLDomainListFilterFactory(IndexSettings indexSettings, Environment environment, String name, Settings settings) {
+        super(indexSettings, name, settings);
+        final String path = settings.get("domain_list");
+        if (path == null) {
+            throw new IllegalArgumentException("[domain_list] must be set for filter [" + name + "]");
+        }
+        try {
+            this.domainList = DomainList.load(environment.configFile().resolve(path));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to load domain list [" + path + "]", e);
+        }
+        this.mode = DomainListMode.fromString(settings.get("mode", "drop"));
+        this.tag = settings.get("tag", "listed");
+    }
+
+
+    @Override
+    public TokenStream create(TokenStream tokenStream) {
+        return new URLDomainListFilter(tokenStream, domainList, mode, tag);
+    }
+}
@@ -4,6 +4,11 @@ import org.apache.lucene.analysis.TokenStream;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.url.PublicSuffixList;
+import org.elasticsearch.index.analysis.url.QueryParameterMatcher;
+import org.elasticsearch.index.analysis.url.URLAnalysisMetrics;
+import org.elasticsearch.index.analysis.url.URLAnalysisStats;
+import org.elasticsearch.index.analysis.url.URLTokenCache;
 import org.elasticsearch.index.analysis.url.URLTokenFilter;
 
 import java.util.Arrays;
@@ -18,15 +23,44 @@ public class URLTokenFilterFactory extends AbstractTokenFilterFactory {
     private final List<URLPart> parts;
     private final boolean urlDecode;
     private boolean tokenizeHost;
+    private final boolean reverseHost;
+    private final IDNMode idnMode;
+    private final int[] ipv4PrefixLengths;
+    private final int[] ipv6PrefixLengths;
     private boolean tokenizePath;
+    private final PathMode pathMode;
+    private final int pathDepth;
+    private final boolean stackPositions;
     private boolean tokenizeQuery;
+    private final String querySeparators;
+    private final QueryParameterMatcher queryParamsInclude;
+    private final QueryParameterMatcher queryParamsExclude;
+    private final PublicSuffixList publicSuffixList;
     private final boolean allowMalformed;
     private final boolean tokenizeMalformed;
     private final boolean passthrough;
+    private final int maxUrlLength;
+    private final int maxTokenLength;
+    private final int maxTokensPerUrl;
+    private final OversizePolicy oversizePolicy;
+    private final HashMode hashMode;
+    private final int hashBits;
+    private final boolean hashOnly;
+    private final URLTokenCache cache;
+    private final URLAnalysisMetrics metrics;
 
 
     public URLTokenFilterFactory(IndexSettings indexSettings, Environment environment, String name, Settings settings) {
+        this(indexSettings, environment, name, settings, null, null);
+    }
+
+
+    public URLTokenFilterFactory(IndexSettings indexSettings, Environment environment, String name, Settings settings,
+            URLTokenCache cache, URLAnalysisStats stats) {
         super(indexSettings, name, settings);
+        this.cache = cache;
+        this.metrics = stats == null ? null
+                : stats.metrics(indexSettings.getIndex().getName(), URLAnalysisStats.FILTERS, name);
 
         this.parts = Arrays.stream(settings.getAsArray("part", new String[]{"whole"}))
                 .map(URLPart::fromString)
@@ -34,11 +68,29 @@ public class URLTokenFilterFactory extends AbstractTokenFilterFactory {
 
         this.urlDecode = settings.getAsBoolean("url_decode", false);
         this.tokenizeHost = settings.getAsBoolean("tokenize_host", true);
+        this.reverseHost = URLTokenizerFactory.isHostOrderReversed(settings);
+        this.idnMode = IDNMode.fromString(settings.get("idn_mode", "none"));
+        this.ipv4PrefixLengths = URLTokenizerFactory.getPrefixLengths(settings, "ipv4_prefix_lengths", 32);
+        this.ipv6PrefixLengths = URLTokenizerFactory.getPrefixLengths(settings, "ipv6_prefix_lengths", 128);
         this.tokenizePath = settings.getAsBoolean("tokenize_path", true);
+        this.pathMode = PathMode.fromString(settings.get("path_mode", "hierarchy"));
+        this.pathDepth = URLTokenizerFactory.getPathDepth(settings);
+        this.stackPositions = settings.getAsBoolean("stack_positions", false);
         this.tokenizeQuery = settings.getAsBoolean("tokenize_query", true);
+        this.querySeparators = settings.get("query_separators", "&");
+        this.queryParamsInclude = QueryParameterMatcher.compile(settings.getAsArray("query_params_include"));
+        this.queryParamsExclude = QueryParameterMatcher.compile(settings.getAsArray("query_params_exclude"));
+        this.publicSuffixList = URLTokenizerFactory.getPublicSuffixList(environment, settings);
         this.allowMalformed = settings.getAsBoolean("allow_malformed", false);
         this.tokenizeMalformed = settings.getAsBoolean("tokenize_malformed", false);
         this.passthrough = settings.getAsBoolean("passthrough", false);
+        this.maxUrlLength = URLTokenizerFactory.getLimit(settings, "max_url_length");
+        this.maxTokenLength = URLTokenizerFactory.getLimit(settings, "max_token_length");
+        this.maxTokensPerUrl = URLTokenizerFactory.getLimit(settings, "max_tokens_per_url");
+        this.oversizePolicy = OversizePolicy.fromString(settings.get("oversize_policy", "truncate"));
+        this.hashMode = HashMode.fromString(settings.get("hash_mode", "none"));
+        this.hashBits = URLTokenizerFactory.getHashBits(settings);
+        this.hashOnly = settings.getAsBoolean("hash_only", false);
     }
 
 
@@ -48,7 +100,27 @@ public class URLTokenFilterFactory extends AbstractTokenFilterFactory {
                 .setParts(parts)
                 .setTokenizeMalformed(tokenizeMalformed)
                 .setTokenizeHost(tokenizeHost)
+                .setReverseHost(reverseHost)
+                .setIdnMode(idnMode)
+                .setIpv4PrefixLengths(ipv4PrefixLengths)
+                .setIpv6PrefixLengths(ipv6PrefixLengths)
                 .setTokenizePath(tokenizePath)
-                .setTokenizeQuery(tokenizeQuery);
+                .setPathMode(pathMode)
+                .setPathDepth(pathDepth)
+                .setStackPositions(stackPositions)
+                .setTokenizeQuery(tokenizeQuery)
+                .setQuerySeparators(querySeparators)
+                .setQueryParamsInclude(queryParamsInclude)
+                .setQueryParamsExclude(queryParamsExclude)
+                .setPublicSuffixList(publicSuffixList)
+                .setMaxUrlLength(maxUrlLength)
+                .setMaxTokenLength(maxTokenLength)
+                .setMaxTokensPerUrl(maxTokensPerUrl)
+                .setOversizePolicy(oversizePolicy)
+                .setHashMode(hashMode)
+                .setHashBits(hashBits)
+                .setHashOnly(hashOnly)
+                .setCache(cache)
+                .setMetrics(metrics);
     }
 }
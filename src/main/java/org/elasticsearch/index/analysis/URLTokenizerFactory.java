@@ -4,8 +4,14 @@ import org.apache.lucene.analysis.Tokenizer;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.url.PublicSuffixList;
+import org.elasticsearch.index.analysis.url.QueryParameterMatcher;
+import org.elasticsearch.index.analysis.url.URLAnalysisMetrics;
+import org.elasticsearch.index.analysis.url.URLAnalysisStats;
+import org.elasticsearch.index.analysis.url.URLTokenCache;
 import org.elasticsearch.index.analysis.url.URLTokenizer;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -18,14 +24,43 @@ public class URLTokenizerFactory extends AbstractTokenizerFactory {
     private List<URLPart> parts;
     private boolean urlDecode;
     private boolean tokenizeHost;
+    private boolean reverseHost;
+    private IDNMode idnMode;
+    private int[] ipv4PrefixLengths;
+    private int[] ipv6PrefixLengths;
     private boolean tokenizePath;
+    private PathMode pathMode;
+    private int pathDepth;
+    private boolean stackPositions;
     private boolean tokenizeQuery;
+    private String querySeparators;
+    private QueryParameterMatcher queryParamsInclude;
+    private QueryParameterMatcher queryParamsExclude;
+    private PublicSuffixList publicSuffixList;
     private boolean allowMalformed;
     private boolean tokenizeMalformed;
+    private int maxUrlLength;
+    private int maxTokenLength;
+    private int maxTokensPerUrl;
+    private OversizePolicy oversizePolicy;
+    private HashMode hashMode;
+    private int hashBits;
+    private boolean hashOnly;
+    private final URLTokenCache cache;
+    private final URLAnalysisMetrics metrics;
 
 
     public URLTokenizerFactory(IndexSettings indexSettings, Environment environment, String name, Settings settings) {
+        this(indexSettings, environment, name, settings, null, null);
+    }
+
+
+    public URLTokenizerFactory(IndexSettings indexSettings, Environment environment, String name, Settings settings,
+            URLTokenCache cache, URLAnalysisStats stats) {
         super(indexSettings, name, settings);
+        this.cache = cache;
+        this.metrics = stats == null ? null
+                : stats.metrics(indexSettings.getIndex().getName(), URLAnalysisStats.TOKENIZERS, name);
 
         String[] parts = settings.getAsArray("part");
         if (parts != null && parts.length > 0) {
@@ -35,10 +70,28 @@ public class URLTokenizerFactory extends AbstractTokenizerFactory {
         }
         this.urlDecode = settings.getAsBoolean("url_decode", false);
         this.tokenizeHost = settings.getAsBoolean("tokenize_host", true);
+        this.reverseHost = isHostOrderReversed(settings);
+        this.idnMode = IDNMode.fromString(settings.get("idn_mode", "none"));
+        this.ipv4PrefixLengths = getPrefixLengths(settings, "ipv4_prefix_lengths", 32);
+        this.ipv6PrefixLengths = getPrefixLengths(settings, "ipv6_prefix_lengths", 128);
         this.tokenizePath = settings.getAsBoolean("tokenize_path", true);
+        this.pathMode = PathMode.fromString(settings.get("path_mode", "hierarchy"));
+        this.pathDepth = getPathDepth(settings);
+        this.stackPositions = settings.getAsBoolean("stack_positions", false);
         this.tokenizeQuery = settings.getAsBoolean("tokenize_query", true);
+        this.querySeparators = settings.get("query_separators", "&");
+        this.queryParamsInclude = QueryParameterMatcher.compile(settings.getAsArray("query_params_include"));
+        this.queryParamsExclude = QueryParameterMatcher.compile(settings.getAsArray("query_params_exclude"));
+        this.publicSuffixList = getPublicSuffixList(environment, settings);
         this.allowMalformed = settings.getAsBoolean("allow_malformed", false);
         this.tokenizeMalformed = settings.getAsBoolean("tokenize_malformed", false);
+        this.maxUrlLength = getLimit(settings, "max_url_length");
+        this.maxTokenLength = getLimit(settings, "max_token_length");
+        this.maxTokensPerUrl = getLimit(settings, "max_tokens_per_url");
+        this.oversizePolicy = OversizePolicy.fromString(settings.get("oversize_policy", "truncate"));
+        this.hashMode = HashMode.fromString(settings.get("hash_mode", "none"));
+        this.hashBits = getHashBits(settings);
+        this.hashOnly = settings.getAsBoolean("hash_only", false);
     }
 
 
@@ -48,10 +101,123 @@ public class URLTokenizerFactory extends AbstractTokenizerFactory {
         tokenizer.setParts(parts);
         tokenizer.setUrlDecode(urlDecode);
         tokenizer.setTokenizeHost(tokenizeHost);
+        tokenizer.setReverseHost(reverseHost);
+        tokenizer.setIdnMode(idnMode);
+        tokenizer.setIpv4PrefixLengths(ipv4PrefixLengths);
+        tokenizer.setIpv6PrefixLengths(ipv6PrefixLengths);
         tokenizer.setTokenizePath(tokenizePath);
+        tokenizer.setPathMode(pathMode);
+        tokenizer.setPathDepth(pathDepth);
+        tokenizer.setStackPositions(stackPositions);
         tokenizer.setTokenizeQuery(tokenizeQuery);
+        tokenizer.setQuerySeparators(querySeparators);
+        tokenizer.setQueryParamsInclude(queryParamsInclude);
+        tokenizer.setQueryParamsExclude(queryParamsExclude);
+        tokenizer.setPublicSuffixList(publicSuffixList);
         tokenizer.setAllowMalformed(allowMalformed);
         tokenizer.setTokenizeMalformed(tokenizeMalformed);
+        tokenizer.setMaxUrlLength(maxUrlLength);
+        tokenizer.setMaxTokenLength(maxTokenLength);
+        tokenizer.setMaxTokensPerUrl(maxTokensPerUrl);
+        tokenizer.setOversizePolicy(oversizePolicy);
+        tokenizer.setHashMode(hashMode);
+        tokenizer.setHashBits(hashBits);
+        tokenizer.setHashOnly(hashOnly);
+        tokenizer.setCache(cache);
+        tokenizer.setMetrics(metrics);
         return tokenizer;
     }
+
+
+    /**
+     * @return the value of the given length or count limit, or zero if it is not set
+     */
+    static int getLimit(Settings settings, String name) {
+        final int limit = settings.getAsInt(name, 0);
+        if (limit < 0) {
+            throw new IllegalArgumentException(name + " must not be negative: " + limit);
+        }
+        return limit;
+    }
+
+
+    /**
+     * @return the network prefix lengths given by the named setting, each of which must be at most the given number of
+     * bits
+     */
+    static int[] getPrefixLengths(Settings settings, String name, int maxLength) {
+        final String[] values = settings.getAsArray(name);
+        final int[] lengths = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                lengths[i] = Integer.parseInt(values[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " must hold integers: " + values[i], e);
+            }
+            if (lengths[i] < 0 || lengths[i] > maxLength) {
+                throw new IllegalArgumentException(name + " must be between 0 and " + maxLength + ": " + lengths[i]);
+            }
+        }
+        return lengths;
+    }
+
+
+    /**
+     * @return the number of bits in the hash tokens emitted according to the hash mode
+     */
+    static int getHashBits(Settings settings) {
+        final int hashBits = settings.getAsInt("hash_bits", 64);
+        if (hashBits != 64 && hashBits != 128) {
+            throw new IllegalArgumentException("hash_bits must be 64 or 128: " + hashBits);
+        }
+        return hashBits;
+    }
+
+
+    /**
+     * @return the maximum number of segments in the path prefixes emitted in hybrid path mode
+     */
+    static int getPathDepth(Settings settings) {
+        final int pathDepth = settings.getAsInt("path_depth", 2);
+        if (pathDepth < 0) {
+            throw new IllegalArgumentException("path_depth must not be negative: " + pathDepth);
+        }
+        return pathDepth;
+    }
+
+
+    /**
+     * @return true if <code>host_order</code> is <code>reversed</code>, false if it is unset or <code>normal</code>
+     */
+    static boolean isHostOrderReversed(Settings settings) {
+        final String hostOrder = settings.get("host_order", "normal");
+        switch (hostOrder) {
+            case "normal":
+                return false;
+            case "reversed":
+                return true;
+            default:
+                throw new IllegalArgumentException(String.format("Unrecognized host order: %s", hostOrder));
+        }
+    }
+
+
+    /**
+     * @return the public suffix list to be used if <code>public_suffix</code> is true, or null otherwise. The list is
+     * read from the file given by <code>public_suffix_list</code>, relative to the config directory, if set.
+     */
+    static PublicSuffixList getPublicSuffixList(Environment environment, Settings settings) {
+        if (!settings.getAsBoolean("public_suffix", false)) {
+            return null;
+        }
+        final String path = settings.get("public_suffix_list");
+        if (path == null) {
+            return PublicSuffixList.getDefault();
+        }
+        try {
+            return PublicSuffixList.load(environment.configFile().resolve(path));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to load public suffix list [" + path + "]", e);
+        }
+    }
 }
@@ -0,0 +1,350 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.OfflineSorter;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rules assigning categories to urls, compiled into a Lucene {@link FST}. A rule is a host, which also covers its
+ * subdomains, optionally followed by a path prefix, which covers the paths beneath it: <code>example.com</code>,
+ * <code>example.com/sports</code>. Each rule is keyed by its host's labels in reverse order followed by its path,
+ * <code>com.example/sports</code>, and its output is the index of its set of categories.
+ *
+ * A url is matched by a single walk of its host from the last label to the first, which at each label also follows the
+ * url's path as far as the rules go. The most specific matching rule wins: the one with the most host labels, and then
+ * the one with the longest path.
+ *
+ * Rules are sorted on disk with {@link OfflineKeySorter} and streamed into the FST, so only the distinct sets of
+ * categories are held on the heap while a dictionary is compiled.
+ *
+ * Dictionaries are immutable and thread safe. Each version of a dictionary file is compiled once per node, and shared
+ * by all indices which use it. A dictionary file which is modified is compiled again for indices created or reopened
+ * afterwards.
+ */
+public final class CategoryDictionary implements Accountable {
+    private static final CompiledFileCache<CategoryDictionary> LOADED =
+            new CompiledFileCache<>(CategoryDictionary::compile);
+
+    private static final int NOT_FOUND = -1;
+
+    /**
+     * Length in bytes of the end of a rule's key, a zero char which sorts before all others, and of its ordinal
+     */
+    private static final int KEY_END_LENGTH = 2;
+    private static final int ORDINAL_LENGTH = Integer.BYTES;
+
+    private final String name;
+    private final int size;
+
+    /**
+     * The compiled rules, or null if there are none
+     */
+    private final FST<Long> fst;
+
+    /**
+     * Each distinct set of categories, indexed by the outputs of {@link #fst}
+     */
+    private final String[][] categorySets;
+
+
+    private CategoryDictionary(String name, int size, FST<Long> fst, String[][] categorySets) {
+        this.name = name;
+        this.size = size;
+        this.fst = fst;
+        this.categorySets = categorySets;
+    }
+
+
+    /**
+     * Load the dictionary in the given file, or return the already loaded dictionary if the file has not been modified
+     * since it was loaded
+     * @param path path of a file holding one rule per line
+     * @return the compiled dictionary
+     * @throws IOException if the file cannot be read
+     */
+    public static CategoryDictionary load(Path path) throws IOException {
+        return LOADED.get(path);
+    }
+
+
+    private static CategoryDictionary compile(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return parse(path.toString(), reader);
+        }
+    }
+
+
+    /**
+     * Compile a dictionary. Each line holds a rule followed by whitespace and a comma separated list of categories,
+     * such as <code>example.com/sports news,sports</code>; blank lines and lines beginning with <code>#</code> are
+     * ignored. Hosts are case insensitive and paths are case sensitive. The categories of rules given more than once
+     * are combined.
+     * @param name a name identifying the dictionary
+     * @param reader reader from which the dictionary will be read
+     * @return the compiled dictionary
+     * @throws IOException if the dictionary cannot be read
+     */
+    static CategoryDictionary parse(String name, Reader reader) throws IOException {
+        try (OfflineKeySorter sorter = new OfflineKeySorter("category_dictionary")) {
+            final BytesRefBuilder record = new BytesRefBuilder();
+            final BufferedReader lines = new BufferedReader(reader);
+            int ordinal = 0;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] fields = line.split("\\s+", 2);
+                if (fields.length < 2) {
+                    throw new IllegalArgumentException("No categories given for rule [" + fields[0] + "] of " + name);
+                }
+                if (fields[0].indexOf('\0') != -1) {
+                    throw new IllegalArgumentException("Invalid rule [" + fields[0] + "] of " + name);
+                }
+                final int pathStart = fields[0].indexOf('/');
+                final String host = DomainList.normalize(pathStart == -1 ? fields[0] : fields[0].substring(0, pathStart));
+                String path = pathStart == -1 ? "" : fields[0].substring(pathStart);
+                while (path.endsWith("/")) {
+                    path = path.substring(0, path.length() - 1);
+                }
+                addRule(sorter, record, DomainList.reverseLabels(host) + path, ordinal, fields[1]);
+                final String ascii = DomainList.toAscii(host);
+                if (ascii != null && !ascii.equals(host)) {
+                    // hosts in urls are usually punycode encoded
+                    addRule(sorter, record, DomainList.reverseLabels(ascii) + path, ordinal, fields[1]);
+                }
+                ordinal++;
+            }
+            return compile(name, sorter);
+        }
+    }
+
+
+    /**
+     * Add a rule to be sorted. The record holds the rule's key, then a zero char, then the ordinal of the rule's line,
+     * so that records with equal keys sort in the order of the file, and finally the rule's categories.
+     */
+    private static void addRule(OfflineKeySorter sorter, BytesRefBuilder record, String key, int ordinal,
+            String categories) throws IOException {
+        record.clear();
+        OfflineKeySorter.appendKey(record, key);
+        for (int i = 0; i < KEY_END_LENGTH; i++) {
+            record.append((byte) 0);
+        }
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            record.append((byte) (ordinal >>> shift));
+        }
+        record.append(new BytesRef(categories));
+        sorter.add(record.get());
+    }
+
+
+    /**
+     * Build the FST from the sorted rules, combining the categories of rules with equal keys
+     */
+    private static CategoryDictionary compile(String name, OfflineKeySorter sorter) throws IOException {
+        final Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE2, PositiveIntOutputs.getSingleton());
+        final IntsRefBuilder scratch = new IntsRefBuilder();
+        final Map<List<String>, Long> categorySetIds = new HashMap<>();
+        final List<String[]> categorySets = new ArrayList<>();
+        final BytesRefBuilder key = new BytesRefBuilder();
+        final Set<String> categories = new LinkedHashSet<>();
+        // true if the rule with the current key has yet to be added to the fst
+        boolean pending = false;
+        int size = 0;
+        try (OfflineSorter.ByteSequencesReader sorted = sorter.sort()) {
+            BytesRef record;
+            while ((record = sorted.next()) != null) {
+                final int keyLength = keyLength(record);
+                if (pending && !new BytesRef(record.bytes, record.offset, keyLength).bytesEquals(key.get())) {
+                    add(builder, scratch, key.get(), categories, categorySetIds, categorySets);
+                    categories.clear();
+                    size++;
+                }
+                key.copyBytes(record.bytes, record.offset, keyLength);
+                pending = true;
+                final int categoriesStart = keyLength + KEY_END_LENGTH + ORDINAL_LENGTH;
+                for (String category : new String(record.bytes, record.offset + categoriesStart,
+                        record.length - categoriesStart, StandardCharsets.UTF_8).split(",")) {
+                    if (!category.trim().isEmpty()) {
+                        categories.add(category.trim());
+                    }
+                }
+            }
+        }
+        if (pending) {
+            add(builder, scratch, key.get(), categories, categorySetIds, categorySets);
+            size++;
+        }
+        return new CategoryDictionary(name, size, builder.finish(),
+                categorySets.toArray(new String[categorySets.size()][]));
+    }
+
+
+    private static void add(Builder<Long> builder, IntsRefBuilder scratch, BytesRef key, Set<String> categories,
+            Map<List<String>, Long> categorySetIds, List<String[]> categorySets) throws IOException {
+        final List<String> categoryList = new ArrayList<>(categories);
+        Long id = categorySetIds.get(categoryList);
+        if (id == null) {
+            id = (long) categorySets.size();
+            categorySetIds.put(categoryList, id);
+            categorySets.add(categoryList.toArray(new String[categoryList.size()]));
+        }
+        builder.add(OfflineKeySorter.toInput(key, key.length, scratch), id);
+    }
+
+
+    /**
+     * @return the length in bytes of the key which begins the given record
+     */
+    private static int keyLength(BytesRef record) {
+        int length = 0;
+        while (record.bytes[record.offset + length] != 0 || record.bytes[record.offset + length + 1] != 0) {
+            length += 2;
+        }
+        return length;
+    }
+
+
+    /**
+     * @return the name of this dictionary: the path of the file from which it was loaded
+     */
+    public String name() {
+        return name;
+    }
+
+
+    /**
+     * @return the number of distinct rules in this dictionary, counting the punycode form of an internationalized host
+     * separately
+     */
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public long ramBytesUsed() {
+        return fst == null ? 0 : fst.ramBytesUsed();
+    }
+
+
+    /**
+     * @return a new matcher for this dictionary. Matchers are not thread safe.
+     */
+    Matcher matcher() {
+        return new Matcher();
+    }
+
+
+    /**
+     * Matches urls against the dictionary, reusing its scratch space for every url
+     */
+    final class Matcher {
+        private final FST.BytesReader in = fst == null ? null : fst.getBytesReader();
+        private final FST.Arc<Long> arc = new FST.Arc<>();
+        private final FST.Arc<Long> pathArc = new FST.Arc<>();
+
+
+        /**
+         * @param buffer buffer containing the url
+         * @param hostStart offset of the first character of the url's host
+         * @param hostEnd offset following the last character of the url's host
+         * @param pathStart offset of the first character of the url's path
+         * @param pathEnd offset following the last character of the url's path
+         * @return the categories of the most specific rule matching the url, or null if no rule matches it. The
+         * returned array must not be modified.
+         * @throws IOException if the dictionary cannot be read
+         */
+        String[] match(char[] buffer, int hostStart, int hostEnd, int pathStart, int pathEnd) throws IOException {
+            if (fst == null) {
+                return null;
+            }
+            if (hostEnd > hostStart && buffer[hostEnd - 1] == '.') {
+                // a fully qualified host
+                hostEnd--;
+            }
+            fst.getFirstArc(arc);
+            // the sum of the outputs of the arcs followed so far
+            long output = 0;
+            int match = NOT_FOUND;
+            int labelEnd = hostEnd;
+            walk:
+            while (labelEnd > hostStart) {
+                int labelStart = labelEnd;
+                while (labelStart > hostStart && buffer[labelStart - 1] != '.') {
+                    labelStart--;
+                }
+                if (labelEnd < hostEnd) {
+                    if (fst.findTargetArc('.', arc, arc, in) == null) {
+                        break;
+                    }
+                    output += arc.output;
+                }
+                for (int i = labelStart; i < labelEnd; i++) {
+                    char c = buffer[i];
+                    if (c >= 'A' && c <= 'Z') {
+                        c += 'a' - 'A';
+                    }
+                    if (fst.findTargetArc(c, arc, arc, in) == null) {
+                        break walk;
+                    }
+                    output += arc.output;
+                }
+                if (arc.isFinal()) {
+                    match = (int) (output + arc.nextFinalOutput);
+                }
+                final int pathMatch = matchPath(buffer, pathStart, pathEnd, output);
+                if (pathMatch != NOT_FOUND) {
+                    match = pathMatch;
+                }
+                labelEnd = labelStart - 1;
+            }
+            return match == NOT_FOUND ? null : categorySets[match];
+        }
+
+
+        /**
+         * Follow the given path from the arc reached by the host labels walked so far
+         * @return the output of the rule with the longest path prefix matching the path, or {@link #NOT_FOUND}
+         */
+        private int matchPath(char[] buffer, int pathStart, int pathEnd, long output) throws IOException {
+            pathArc.copyFrom(arc);
+            int match = NOT_FOUND;
+            for (int i = pathStart; i < pathEnd; i++) {
+                final char c = buffer[i];
+                if (c == '/' && i > pathStart && pathArc.isFinal()) {
+                    // a rule's path prefix only matches whole segments
+                    match = (int) (output + pathArc.nextFinalOutput);
+                }
+                if (fst.findTargetArc(c, pathArc, pathArc, in) == null) {
+                    return match;
+                }
+                output += pathArc.output;
+            }
+            if (pathEnd > pathStart && pathArc.isFinal()) {
+                match = (int) (output + pathArc.nextFinalOutput);
+            }
+            return match;
+        }
+    }
+}
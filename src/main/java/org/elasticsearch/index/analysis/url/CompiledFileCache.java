@@ -0,0 +1,64 @@
+package org.elasticsearch.index.analysis.url;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node level cache of lists compiled from files, keyed on the path of each file. A file is compiled again once its
+ * modification time changes, so that indices created or reopened after a list file is updated use the new list without
+ * a restart of the node. Indices which already use a list keep their copy until they are reopened.
+ *
+ * Files are compiled outside of the cache's map, so that compiling a large file does not block lookups of other
+ * files. Files compiled concurrently may be compiled more than once, but all callers which see the same modification
+ * time are given the same instance.
+ * @param <T> type of the compiled lists
+ */
+final class CompiledFileCache<T> {
+    /**
+     * Compiles the file at the given path
+     */
+    @FunctionalInterface
+    interface Compiler<T> {
+        T compile(Path path) throws IOException;
+    }
+
+    private final ConcurrentHashMap<Path, Entry<T>> entries = new ConcurrentHashMap<>();
+    private final Compiler<T> compiler;
+
+
+    CompiledFileCache(Compiler<T> compiler) {
+        this.compiler = compiler;
+    }
+
+
+    /**
+     * @param path path of the file
+     * @return the list compiled from the current version of the file
+     * @throws IOException if the file cannot be read
+     */
+    T get(Path path) throws IOException {
+        final Path key = path.toAbsolutePath().normalize();
+        final FileTime modified = Files.getLastModifiedTime(key);
+        final Entry<T> cached = entries.get(key);
+        if (cached != null && cached.modified.equals(modified)) {
+            return cached.value;
+        }
+        final Entry<T> compiled = new Entry<>(modified, compiler.compile(key));
+        return entries.merge(key, compiled,
+                (existing, added) -> existing.modified.equals(added.modified) ? existing : added).value;
+    }
+
+
+    private static final class Entry<T> {
+        private final FileTime modified;
+        private final T value;
+
+        private Entry(FileTime modified, T value) {
+            this.modified = modified;
+            this.value = value;
+        }
+    }
+}
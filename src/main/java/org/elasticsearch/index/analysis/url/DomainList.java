@@ -0,0 +1,262 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.OfflineSorter;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.NoOutputs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * A list of domains, such as a block list or an allow list, compiled into a Lucene {@link FST}. Each domain is keyed
+ * by its labels in reverse order, <code>com.example</code> for <code>example.com</code>, so that a host and all of its
+ * parent domains are matched by a single walk of the FST from the host's last label to its first. Lists of millions of
+ * domains share most of their keys' prefixes and suffixes, and compile to a few bytes per domain.
+ *
+ * Domains are sorted on disk with {@link OfflineKeySorter} and streamed into the FST, so compiling a list takes little
+ * more heap than the compiled list itself.
+ *
+ * Lists are immutable and thread safe. Each version of a list file is compiled once per node, and shared by all
+ * indices which use it. A list file which is modified is compiled again for indices created or reopened afterwards.
+ */
+public final class DomainList implements Accountable {
+    private static final CompiledFileCache<DomainList> LOADED = new CompiledFileCache<>(DomainList::compile);
+
+    private final String name;
+    private final int size;
+
+    /**
+     * The compiled list, or null if it is empty
+     */
+    private final FST<Object> fst;
+
+
+    private DomainList(String name, int size, FST<Object> fst) {
+        this.name = name;
+        this.size = size;
+        this.fst = fst;
+    }
+
+
+    /**
+     * Load the list in the given file, or return the already loaded list if the file has not been modified since it
+     * was loaded
+     * @param path path of a file holding one domain per line
+     * @return the compiled list
+     * @throws IOException if the file cannot be read
+     */
+    public static DomainList load(Path path) throws IOException {
+        return LOADED.get(path);
+    }
+
+
+    private static DomainList compile(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return parse(path.toString(), reader);
+        }
+    }
+
+
+    /**
+     * Compile a list. Each line holds a single domain, which matches itself and all of its subdomains; blank lines and
+     * lines beginning with <code>#</code> are ignored, as is a leading <code>*.</code> or <code>.</code>.
+     * @param name a name identifying the list
+     * @param reader reader from which the list will be read
+     * @return the compiled list
+     * @throws IOException if the list cannot be read
+     */
+    static DomainList parse(String name, Reader reader) throws IOException {
+        try (OfflineKeySorter sorter = new OfflineKeySorter("domain_list")) {
+            final BytesRefBuilder record = new BytesRefBuilder();
+            final BufferedReader lines = new BufferedReader(reader);
+            String line;
+            while ((line = lines.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                // only the first whitespace delimited word of a line is significant
+                final String domain = normalize(line.split("\\s", 2)[0]);
+                if (domain.isEmpty()) {
+                    continue;
+                }
+                addKey(sorter, record, reverseLabels(domain));
+                final String ascii = toAscii(domain);
+                if (ascii != null && !ascii.equals(domain)) {
+                    // hosts in urls are usually punycode encoded
+                    addKey(sorter, record, reverseLabels(ascii));
+                }
+            }
+            // the fst must be built from sorted, distinct keys
+            final Builder<Object> builder = new Builder<>(FST.INPUT_TYPE.BYTE2, NoOutputs.getSingleton());
+            final IntsRefBuilder scratch = new IntsRefBuilder();
+            final Object noOutput = NoOutputs.getSingleton().getNoOutput();
+            final BytesRefBuilder previous = new BytesRefBuilder();
+            int size = 0;
+            try (OfflineSorter.ByteSequencesReader sorted = sorter.sort()) {
+                BytesRef key;
+                while ((key = sorted.next()) != null) {
+                    if (size > 0 && key.bytesEquals(previous.get())) {
+                        continue;
+                    }
+                    builder.add(OfflineKeySorter.toInput(key, key.length, scratch), noOutput);
+                    previous.copyBytes(key);
+                    size++;
+                }
+            }
+            return new DomainList(name, size, builder.finish());
+        }
+    }
+
+
+    private static void addKey(OfflineKeySorter sorter, BytesRefBuilder record, String key) throws IOException {
+        record.clear();
+        OfflineKeySorter.appendKey(record, key);
+        sorter.add(record.get());
+    }
+
+
+    /**
+     * @return the given domain, lower cased and without a leading <code>*.</code> or <code>.</code> or a trailing
+     * <code>.</code>
+     */
+    static String normalize(String domain) {
+        domain = domain.toLowerCase(Locale.ROOT);
+        if (domain.startsWith("*.")) {
+            domain = domain.substring(2);
+        } else if (domain.startsWith(".")) {
+            domain = domain.substring(1);
+        }
+        if (domain.endsWith(".")) {
+            domain = domain.substring(0, domain.length() - 1);
+        }
+        return domain;
+    }
+
+
+    /**
+     * @return the labels of the given domain in reverse order, such as <code>com.example.www</code> for
+     * <code>www.example.com</code>
+     */
+    static String reverseLabels(String domain) {
+        final StringBuilder reversed = new StringBuilder(domain.length());
+        int labelEnd = domain.length();
+        for (int i = labelEnd - 1; i >= -1; i--) {
+            if (i == -1 || domain.charAt(i) == '.') {
+                if (reversed.length() > 0) {
+                    reversed.append('.');
+                }
+                reversed.append(domain, i + 1, labelEnd);
+                labelEnd = i;
+            }
+        }
+        return reversed.toString();
+    }
+
+
+    /**
+     * @return the punycode form of the given domain, or null if it is not a valid internationalized domain
+     */
+    static String toAscii(String domain) {
+        try {
+            return IDN.toASCII(domain);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * @return the name of this list: the path of the file from which it was loaded
+     */
+    public String name() {
+        return name;
+    }
+
+
+    /**
+     * @return the number of distinct domains in this list, counting the punycode form of an internationalized domain
+     * separately
+     */
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public long ramBytesUsed() {
+        return fst == null ? 0 : fst.ramBytesUsed();
+    }
+
+
+    /**
+     * @return a new matcher for this list. Matchers are not thread safe.
+     */
+    Matcher matcher() {
+        return new Matcher();
+    }
+
+
+    /**
+     * Matches hosts against the list, reusing its scratch space for every host
+     */
+    final class Matcher {
+        private final FST.BytesReader in = fst == null ? null : fst.getBytesReader();
+        private final FST.Arc<Object> arc = new FST.Arc<>();
+
+
+        /**
+         * @param host buffer containing the host
+         * @param from offset of the first character of the host
+         * @param to offset following the last character of the host
+         * @return true if the host, or any of its parent domains, is in the list. Hosts are matched case insensitively.
+         * @throws IOException if the list cannot be read
+         */
+        boolean matches(char[] host, int from, int to) throws IOException {
+            if (fst == null) {
+                return false;
+            }
+            if (to > from && host[to - 1] == '.') {
+                // a fully qualified host
+                to--;
+            }
+            fst.getFirstArc(arc);
+            int labelEnd = to;
+            while (labelEnd > from) {
+                int labelStart = labelEnd;
+                while (labelStart > from && host[labelStart - 1] != '.') {
+                    labelStart--;
+                }
+                if (labelEnd < to && fst.findTargetArc('.', arc, arc, in) == null) {
+                    return false;
+                }
+                for (int i = labelStart; i < labelEnd; i++) {
+                    char c = host[i];
+                    if (c >= 'A' && c <= 'Z') {
+                        c += 'a' - 'A';
+                    }
+                    if (fst.findTargetArc(c, arc, arc, in) == null) {
+                        return false;
+                    }
+                }
+                if (arc.isFinal()) {
+                    // the domain ending at this label is in the list
+                    return true;
+                }
+                labelEnd = labelStart - 1;
+            }
+            return false;
+        }
+    }
+}
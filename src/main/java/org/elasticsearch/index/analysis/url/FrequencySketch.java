@@ -0,0 +1,95 @@
+package org.elasticsearch.index.analysis.url;
+
+/**
+ * A probabilistic estimate of how often each key has been seen recently: a count-min sketch of four rows of 4-bit
+ * counters, packed sixteen to a <code>long</code>. Once the number of increments reaches ten times the width of the
+ * sketch, all counters are halved so that the estimate favors recent history.
+ *
+ * This is the frequency estimator of the TinyLFU admission policy used by {@link URLTokenCache}. Instances are not
+ * thread safe.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+
+    /**
+     * @param expectedEntries the number of distinct keys which are expected to be tracked
+     */
+    FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(16, expectedEntries - 1)) << 1;
+        table = new long[width];
+        sampleSize = 10 * width;
+    }
+
+
+    /**
+     * @param hash hash of a key
+     * @return the estimated number of times the key has been seen, up to 15
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final long h = mix(hash, i);
+            frequency = Math.min(frequency, (int) (table[index(h)] >>> offset(h)) & MAX_COUNT);
+        }
+        return frequency;
+    }
+
+
+    /**
+     * Record an occurrence of a key
+     * @param hash hash of the key
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final long h = mix(hash, i);
+            final int index = index(h);
+            final int offset = offset(h);
+            if (((table[index] >>> offset) & MAX_COUNT) < MAX_COUNT) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+
+    /**
+     * Halve every counter
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+
+    private static long mix(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return h ^ (h >>> 29);
+    }
+
+
+    private int index(long h) {
+        return (int) (h >>> 32) & (table.length - 1);
+    }
+
+
+    private static int offset(long h) {
+        return ((int) h & 15) << 2;
+    }
+}
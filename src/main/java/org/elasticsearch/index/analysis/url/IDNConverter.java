@@ -0,0 +1,107 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.index.analysis.IDNMode;
+
+import java.net.IDN;
+
+/**
+ * Converts hosts between their Unicode and ASCII compatible forms, as described by
+ * <a href="https://tools.ietf.org/html/rfc3490">RFC 3490</a>. Hosts which are already in the desired form are
+ * recognized by a single scan of their characters, and are not converted; only hosts which need converting pay for
+ * {@link IDN}.
+ *
+ * Instances are not thread safe.
+ */
+final class IDNConverter {
+    private static final String ACE_PREFIX = "xn--";
+
+    /**
+     * Holds the most recently converted host. Reused across hosts.
+     */
+    private char[] output = new char[64];
+
+
+    /**
+     * Convert the given host to the given form
+     * @param mode the desired form of the host
+     * @param src buffer containing the host
+     * @param from offset of the first character of the host
+     * @param to offset following the last character of the host
+     * @return the length of the converted host, which is available from {@link #output()}, or -1 if the host is
+     * already in the desired form or cannot be converted
+     */
+    int convert(IDNMode mode, char[] src, int from, int to) {
+        switch (mode) {
+            case ASCII:
+                if (isAscii(src, from, to)) {
+                    return -1;
+                }
+                break;
+            case UNICODE:
+                if (!hasACELabel(src, from, to)) {
+                    return -1;
+                }
+                break;
+            case NONE:
+            default:
+                return -1;
+        }
+        final String host = new String(src, from, to - from);
+        final String converted;
+        try {
+            converted = mode == IDNMode.ASCII ? IDN.toASCII(host, IDN.ALLOW_UNASSIGNED)
+                    : IDN.toUnicode(host, IDN.ALLOW_UNASSIGNED);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        if (converted.equals(host)) {
+            return -1;
+        }
+        if (output.length < converted.length()) {
+            output = ArrayUtil.grow(output, converted.length());
+        }
+        converted.getChars(0, converted.length(), output, 0);
+        return converted.length();
+    }
+
+
+    /**
+     * @return the buffer holding the most recently converted host
+     */
+    char[] output() {
+        return output;
+    }
+
+
+    /**
+     * @return true if the given character separates labels, as by {@link IDN}
+     */
+    static boolean isLabelSeparator(char c) {
+        return c == '.' || c == '\u3002' || c == '\uFF0E' || c == '\uFF61';
+    }
+
+
+    private static boolean isAscii(char[] src, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (src[i] >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return true if any label of the given host begins with the ACE prefix <code>xn--</code>
+     */
+    private static boolean hasACELabel(char[] src, int from, int to) {
+        for (int i = from; i + ACE_PREFIX.length() <= to; i++) {
+            if ((i == from || isLabelSeparator(src[i - 1])) && (src[i] == 'x' || src[i] == 'X')
+                    && (src[i + 1] == 'n' || src[i + 1] == 'N') && src[i + 2] == '-' && src[i + 3] == '-') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
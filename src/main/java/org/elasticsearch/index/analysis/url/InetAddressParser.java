@@ -0,0 +1,293 @@
+package org.elasticsearch.index.analysis.url;
+
+/**
+ * Recognizes IPv4 and IPv6 address literals straight from the buffer holding a host, and formats the network prefixes
+ * of the most recently parsed address in CIDR notation, such as <code>192.168.0.0/16</code> or
+ * <code>2001:db8::/32</code>. Addresses are accepted in the forms accepted by Guava's <code>InetAddresses</code>: four
+ * decimal octets without leading zeros, or eight hex groups with at most one <code>::</code> and optionally ending with
+ * an IPv4 address. IPv6 literals may also be enclosed in brackets, as they are in urls.
+ *
+ * Parsing and formatting reuse the same scratch space for every address. Instances are not thread safe.
+ */
+final class InetAddressParser {
+    static final int IPV4_LENGTH = 4;
+    static final int IPV6_LENGTH = 16;
+
+    private static final int IPV6_GROUPS = 8;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The most recently parsed address, in network byte order
+     */
+    private final byte[] address = new byte[IPV6_LENGTH];
+    private int length;
+
+    /**
+     * Holds the most recently formatted prefix; long enough for any IPv6 prefix
+     */
+    private final char[] output = new char[48];
+
+    /**
+     * Scratch space holding the groups of an IPv6 prefix while it is formatted
+     */
+    private final int[] groups = new int[IPV6_GROUPS];
+
+
+    /**
+     * Parse the given host as an IP address
+     * @param src buffer containing the host
+     * @param from offset of the first character of the host
+     * @param to offset following the last character of the host
+     * @return the number of bytes in the address: {@link #IPV4_LENGTH} or {@link #IPV6_LENGTH}, or 0 if the host is
+     * not an IP address
+     */
+    int parse(char[] src, int from, int to) {
+        if (to - from > 2 && src[from] == '[' && src[to - 1] == ']') {
+            length = parseIPv6(src, from + 1, to - 1) ? IPV6_LENGTH : 0;
+        } else if (parseIPv4(src, from, to, 0)) {
+            length = IPV4_LENGTH;
+        } else {
+            length = parseIPv6(src, from, to) ? IPV6_LENGTH : 0;
+        }
+        return length;
+    }
+
+
+    /**
+     * Parse the given characters, which are not enclosed in brackets, as an IPv6 address
+     * @param src buffer containing the address
+     * @param from offset of the first character of the address
+     * @param to offset following the last character of the address
+     * @return true if the characters are an IPv6 address
+     */
+    boolean parseIPv6Literal(char[] src, int from, int to) {
+        length = parseIPv6(src, from, to) ? IPV6_LENGTH : 0;
+        return length == IPV6_LENGTH;
+    }
+
+
+    /**
+     * Format the network prefix of the given length of the most recently parsed address. An IPv6 prefix is written in
+     * the canonical form of <a href="https://tools.ietf.org/html/rfc5952">RFC 5952</a>.
+     * @param prefixLength number of leading bits of the address which make up the prefix
+     * @return the number of characters written to {@link #output()}
+     */
+    int formatPrefix(int prefixLength) {
+        final int bits = Math.min(prefixLength, length * 8);
+        int written;
+        if (length == IPV4_LENGTH) {
+            written = 0;
+            for (int i = 0; i < IPV4_LENGTH; i++) {
+                if (i > 0) {
+                    output[written++] = '.';
+                }
+                written = appendDecimal(maskedByte(i, bits), written);
+            }
+        } else {
+            for (int i = 0; i < IPV6_GROUPS; i++) {
+                groups[i] = maskedByte(2 * i, bits) << 8 | maskedByte(2 * i + 1, bits);
+            }
+            written = formatIPv6();
+        }
+        output[written++] = '/';
+        return appendDecimal(bits, written);
+    }
+
+
+    /**
+     * @return the buffer holding the most recently formatted prefix
+     */
+    char[] output() {
+        return output;
+    }
+
+
+    /**
+     * @return the given byte of the address, with the bits beyond the prefix cleared
+     */
+    private int maskedByte(int i, int prefixLength) {
+        final int kept = prefixLength - i * 8;
+        if (kept <= 0) {
+            return 0;
+        }
+        final int value = address[i] & 0xff;
+        return kept >= 8 ? value : value & (0xff << (8 - kept)) & 0xff;
+    }
+
+
+    /**
+     * Write the IPv6 {@link #groups} in lower case hex without leading zeros, replacing the first of the longest runs
+     * of two or more zero groups with <code>::</code>
+     */
+    private int formatIPv6() {
+        int runStart = -1;
+        int runLength = 1;
+        for (int i = 0; i < IPV6_GROUPS; i++) {
+            int j = i;
+            while (j < IPV6_GROUPS && groups[j] == 0) {
+                j++;
+            }
+            if (j - i > runLength) {
+                runStart = i;
+                runLength = j - i;
+            }
+            i = j;
+        }
+        int written = 0;
+        for (int i = 0; i < IPV6_GROUPS; i++) {
+            if (i == runStart) {
+                output[written++] = ':';
+                output[written++] = ':';
+                i += runLength - 1;
+                continue;
+            }
+            if (i > 0 && i != runStart + runLength) {
+                output[written++] = ':';
+            }
+            final int group = groups[i];
+            boolean leading = true;
+            for (int shift = 12; shift >= 0; shift -= 4) {
+                final int digit = (group >>> shift) & 0xf;
+                if (digit != 0 || !leading || shift == 0) {
+                    output[written++] = HEX_DIGITS[digit];
+                    leading = false;
+                }
+            }
+        }
+        return written;
+    }
+
+
+    private int appendDecimal(int value, int written) {
+        if (value >= 100) {
+            output[written++] = (char) ('0' + value / 100);
+        }
+        if (value >= 10) {
+            output[written++] = (char) ('0' + value / 10 % 10);
+        }
+        output[written++] = (char) ('0' + value % 10);
+        return written;
+    }
+
+
+    /**
+     * Parse four decimal octets into {@link #address}, starting at the given byte
+     */
+    private boolean parseIPv4(char[] src, int from, int to, int offset) {
+        int octets = 0;
+        int i = from;
+        while (octets < IPV4_LENGTH) {
+            final int start = i;
+            int value = 0;
+            while (i < to && i - start < 3 && src[i] >= '0' && src[i] <= '9') {
+                value = value * 10 + src[i] - '0';
+                i++;
+            }
+            if (i == start || value > 255 || (src[start] == '0' && i - start > 1)) {
+                // empty, out of range, or with a leading zero, which could be read as octal
+                return false;
+            }
+            address[offset + octets++] = (byte) value;
+            if (octets < IPV4_LENGTH) {
+                if (i == to || src[i] != '.') {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return i == to;
+    }
+
+
+    /**
+     * Parse up to eight hex groups, with at most one <code>::</code> standing for a run of zero groups, into
+     * {@link #address}
+     */
+    private boolean parseIPv6(char[] src, int from, int to) {
+        if (to - from < 2) {
+            return false;
+        }
+        int groupCount = 0;
+        // index of the group at which the zero groups of a "::" are inserted, or -1 if there is none
+        int compressAt = -1;
+        int i = from;
+        if (src[i] == ':') {
+            if (src[i + 1] != ':') {
+                return false;
+            }
+            compressAt = 0;
+            i += 2;
+        }
+        while (i < to) {
+            if (groupCount == IPV6_GROUPS) {
+                return false;
+            }
+            final int start = i;
+            int value = 0;
+            int digit;
+            while (i < to && i - start < 4 && (digit = hexValue(src[i])) != -1) {
+                value = value << 4 | digit;
+                i++;
+            }
+            if (i < to && src[i] == '.') {
+                // a trailing IPv4 address, which fills the last two groups
+                if (groupCount > IPV6_GROUPS - 2 || !parseIPv4(src, start, to, groupCount * 2)) {
+                    return false;
+                }
+                groupCount += 2;
+                break;
+            }
+            if (i == start) {
+                return false;
+            }
+            address[groupCount * 2] = (byte) (value >>> 8);
+            address[groupCount * 2 + 1] = (byte) value;
+            groupCount++;
+            if (i == to) {
+                break;
+            }
+            if (src[i] != ':') {
+                return false;
+            }
+            i++;
+            if (i < to && src[i] == ':') {
+                if (compressAt != -1) {
+                    return false;
+                }
+                compressAt = groupCount;
+                i++;
+            } else if (i == to) {
+                return false;
+            }
+        }
+        if (compressAt == -1) {
+            return groupCount == IPV6_GROUPS;
+        }
+        if (groupCount == IPV6_GROUPS) {
+            return false;
+        }
+        // move the groups following the "::" to the end of the address, and zero those in between
+        final int moved = (groupCount - compressAt) * 2;
+        final int zeroed = IPV6_LENGTH - groupCount * 2;
+        System.arraycopy(address, compressAt * 2, address, compressAt * 2 + zeroed, moved);
+        for (int j = compressAt * 2; j < compressAt * 2 + zeroed; j++) {
+            address[j] = 0;
+        }
+        return true;
+    }
+
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,47 @@
+package org.elasticsearch.index.analysis.url;
+
+/**
+ * Why an input is not a well formed url
+ */
+public enum MalformedReason {
+    /**
+     * The input is a well formed url
+     */
+    NONE,
+
+    /**
+     * The input is empty, or holds nothing but whitespace
+     */
+    EMPTY,
+
+    /**
+     * The input does not begin with a scheme followed by <code>:</code>
+     */
+    MISSING_SCHEME,
+
+    /**
+     * The scheme is not one of {@link URLScanner#KNOWN_SCHEMES}
+     */
+    UNKNOWN_SCHEME,
+
+    /**
+     * A bracketed IPv6 host is not closed, does not hold an IPv6 address, or is followed by something other than a port
+     */
+    INVALID_HOST,
+
+    /**
+     * A <code>jar:</code> url does not contain <code>!/</code>, or the url of the archive preceding it is malformed
+     * or is itself a <code>jar:</code> url
+     */
+    INVALID_JAR,
+
+    /**
+     * The port is not a number of at most nine digits
+     */
+    INVALID_PORT,
+
+    /**
+     * A part of the url which is to be url decoded contains an invalid escape, such as <code>%2v</code>
+     */
+    INVALID_ESCAPE
+}
@@ -0,0 +1,376 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+
+/**
+ * A lenient, reusable scanner for strings which {@link URLScanner} rejects, such as URLs lacking a protocol
+ * (<code>foo.com/bar?baz=bat</code>) or bare paths (<code>/bar#baz</code>). The scanner never fails: it locates
+ * whichever parts it can find and records their offsets.
+ *
+ * Parts are located exactly as the regular expressions formerly used by {@link URLUtils#getPart(String, URLPart)}
+ * located them, but in linear time: each character is examined a bounded number of times regardless of the input,
+ * and nothing is allocated.
+ *
+ * Instances are not thread safe, and are intended to be reused by a single tokenizer.
+ */
+final class MalformedURLScanner {
+    /**
+     * A host is only recognized if at most this many characters follow its first character.
+     */
+    private static final int MAX_HOST_REMAINDER = 255;
+
+    /**
+     * Maximum length of a single host label
+     */
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    private static final int NOT_FOUND = -1;
+
+    private char[] buffer;
+
+    private int urlStart;
+    private int urlEnd;
+    private int schemeStart;
+    private int schemeEnd;
+    private int hostStart;
+    private int hostEnd;
+    private int portStart;
+    private int portEnd;
+    private int pathStart;
+    private int pathEnd;
+    private int queryStart;
+    private int queryEnd;
+    private int refStart;
+    private int refEnd;
+
+    /**
+     * End of the input, excluding a single trailing line terminator
+     */
+    private int contentEnd;
+
+    /**
+     * Offset of the first line terminator in the input, or {@link #urlEnd} if there is none
+     */
+    private int firstLineTerminator;
+
+
+    /**
+     * Scan the given characters as a potentially malformed URL.
+     * @param buffer buffer containing the URL
+     * @param offset offset of the first character of the URL in the buffer
+     * @param length number of characters in the URL
+     */
+    void scan(char[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        urlStart = offset;
+        urlEnd = offset + length;
+        schemeStart = schemeEnd = NOT_FOUND;
+        hostStart = hostEnd = NOT_FOUND;
+        portStart = portEnd = NOT_FOUND;
+        queryStart = queryEnd = NOT_FOUND;
+        refStart = refEnd = NOT_FOUND;
+        findLineTerminators();
+
+        // scheme: leading letters followed by ://
+        int i = urlStart;
+        while (i < urlEnd && isAlpha(buffer[i])) {
+            i++;
+        }
+        int authorityStart = urlStart;
+        if (i + 2 < urlEnd && buffer[i] == ':' && buffer[i + 1] == '/' && buffer[i + 2] == '/') {
+            schemeStart = urlStart;
+            schemeEnd = i;
+            authorityStart = i + 3;
+        }
+
+        // host and port
+        i = authorityStart;
+        int end = scanHost(authorityStart);
+        if (end != NOT_FOUND) {
+            hostStart = authorityStart;
+            hostEnd = end;
+            i = scanPort(end);
+        } else {
+            // no host follows the scheme; the path starts after a port, if any
+            i = skipPort(authorityStart);
+            if (authorityStart > urlStart && (end = scanHost(urlStart)) != NOT_FOUND) {
+                // the scheme itself is taken to be the host
+                hostStart = urlStart;
+                hostEnd = end;
+                scanPort(end);
+            }
+        }
+
+        // path
+        pathStart = i;
+        while (i < urlEnd && buffer[i] != '?' && buffer[i] != '#' && buffer[i] != '&') {
+            i++;
+        }
+        pathEnd = i;
+
+        // ref, which may precede the query
+        if (i < urlEnd && buffer[i] == '#') {
+            refStart = ++i;
+            while (i < urlEnd && buffer[i] != '?' && buffer[i] != '&') {
+                i++;
+            }
+            refEnd = i;
+        }
+
+        // query: everything following the first ? up to the end of the line
+        while (i < urlEnd && buffer[i] != '?') {
+            i++;
+        }
+        if (i < urlEnd) {
+            queryStart = i + 1;
+            if (firstLineTerminator >= queryStart) {
+                queryEnd = firstLineTerminator;
+            } else {
+                queryEnd = queryStart;
+                while (queryEnd < urlEnd && !isLineTerminator(buffer[queryEnd])) {
+                    queryEnd++;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Locate {@link #contentEnd} and {@link #firstLineTerminator}
+     */
+    private void findLineTerminators() {
+        contentEnd = urlEnd;
+        if (contentEnd > urlStart && isLineTerminator(buffer[contentEnd - 1])) {
+            contentEnd--;
+            if (buffer[contentEnd] == '\n' && contentEnd > urlStart && buffer[contentEnd - 1] == '\r') {
+                contentEnd--;
+            }
+        }
+        firstLineTerminator = urlStart;
+        while (firstLineTerminator < urlEnd && !isLineTerminator(buffer[firstLineTerminator])) {
+            firstLineTerminator++;
+        }
+    }
+
+
+    /**
+     * Match a host name consisting of dot separated labels, starting at the given offset. Each label starts and ends
+     * with a letter or digit, and may contain hyphens. A single trailing dot is included in the host.
+     * @param start offset at which the host must start
+     * @return the end of the host, or {@link #NOT_FOUND} if no host starts at the given offset
+     */
+    private int scanHost(int start) {
+        final int remainder = contentEnd - start;
+        if (remainder < 1 || remainder > MAX_HOST_REMAINDER || firstLineTerminator < contentEnd) {
+            return NOT_FOUND;
+        }
+        int i = scanLabel(start);
+        if (i == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        while (i < urlEnd && buffer[i] == '.') {
+            int labelEnd = scanLabel(i + 1);
+            if (labelEnd == NOT_FOUND) {
+                // trailing dot
+                return i + 1;
+            }
+            i = labelEnd;
+        }
+        return i;
+    }
+
+
+    /**
+     * @param start offset at which the label must start
+     * @return the end of the longest label starting at the given offset, or {@link #NOT_FOUND} if there is none
+     */
+    private int scanLabel(int start) {
+        if (start >= urlEnd || !isAlphanumeric(buffer[start])) {
+            return NOT_FOUND;
+        }
+        final int limit = Math.min(urlEnd, start + MAX_LABEL_LENGTH);
+        int end = start + 1;
+        for (int i = end; i < limit; i++) {
+            final char c = buffer[i];
+            if (isAlphanumeric(c)) {
+                end = i + 1;
+            } else if (c != '-') {
+                break;
+            }
+        }
+        return end;
+    }
+
+
+    /**
+     * Record the port following the host, if any
+     * @param start offset following the host
+     * @return offset following the port
+     */
+    private int scanPort(int start) {
+        final int end = skipPort(start);
+        if (end > start) {
+            portStart = start + 1;
+            portEnd = end;
+        }
+        return end;
+    }
+
+
+    /**
+     * @param start offset at which a port may start
+     * @return offset following the colon and digits of a port starting at the given offset
+     */
+    private int skipPort(int start) {
+        if (start >= urlEnd || buffer[start] != ':') {
+            return start;
+        }
+        int i = start + 1;
+        while (i < urlEnd && buffer[i] >= '0' && buffer[i] <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+
+    private static boolean isAlphanumeric(char c) {
+        return isAlpha(c) || (c >= '0' && c <= '9');
+    }
+
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+
+    /**
+     * @return the buffer which was most recently scanned
+     */
+    char[] buffer() {
+        return buffer;
+    }
+
+
+    /**
+     * @param part a url part
+     * @return the offset of the first character of the given part in the scanned buffer, or -1 if it was not found
+     */
+    int start(URLPart part) {
+        switch (part) {
+            case PROTOCOL:
+                return schemeStart;
+            case HOST:
+                return hostStart;
+            case PORT:
+                return portStart;
+            case PATH:
+                return pathStart;
+            case REF:
+                return refStart;
+            case QUERY:
+                return queryStart;
+            case WHOLE:
+            default:
+                return urlStart;
+        }
+    }
+
+
+    /**
+     * @param part a url part
+     * @return the offset following the last character of the given part in the scanned buffer, or -1 if it was not
+     * found
+     */
+    int end(URLPart part) {
+        switch (part) {
+            case PROTOCOL:
+                return schemeEnd;
+            case HOST:
+                return hostEnd;
+            case PORT:
+                return portEnd;
+            case PATH:
+                return pathEnd;
+            case REF:
+                return refEnd;
+            case QUERY:
+                return queryEnd;
+            case WHOLE:
+            default:
+                return urlEnd;
+        }
+    }
+
+
+    /**
+     * @param part a url part
+     * @return true if the given part was found, even if it is empty
+     */
+    boolean found(URLPart part) {
+        return start(part) != NOT_FOUND;
+    }
+
+
+    /**
+     * @param part a url part
+     * @return true if the given part was found and is non-empty
+     */
+    boolean has(URLPart part) {
+        return end(part) > start(part);
+    }
+
+
+    /**
+     * @return {@link ParseResult#RECOVERABLE} if the scanned input resembles a url, having a scheme or a host of at
+     * least two labels, or being a bare path such as <code>/bar#baz</code>, and {@link ParseResult#GARBAGE} otherwise
+     */
+    ParseResult result() {
+        if (found(URLPart.PROTOCOL) || (urlStart < urlEnd && buffer[urlStart] == '/')) {
+            return ParseResult.RECOVERABLE;
+        }
+        if (found(URLPart.HOST)) {
+            // a trailing dot does not separate labels
+            for (int i = hostStart; i < hostEnd - 1; i++) {
+                if (buffer[i] == '.') {
+                    return ParseResult.RECOVERABLE;
+                }
+            }
+        }
+        return ParseResult.GARBAGE;
+    }
+
+
+    /**
+     * @return the port implied by the protocol if no port was given explicitly, or null if it cannot be inferred
+     */
+    String defaultPort() {
+        if (found(URLPart.PORT) || !found(URLPart.PROTOCOL)) {
+            return null;
+        }
+        if (regionEquals("http", schemeStart, schemeEnd)) {
+            return "80";
+        }
+        if (regionEquals("https", schemeStart, schemeEnd)) {
+            return "443";
+        }
+        return null;
+    }
+
+
+    private boolean regionEquals(String s, int start, int end) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != s.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
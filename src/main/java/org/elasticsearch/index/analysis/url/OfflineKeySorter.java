@@ -0,0 +1,126 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.OfflineSorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sorts the keys from which an {@link org.apache.lucene.util.fst.FST} is built using Lucene's {@link OfflineSorter},
+ * which spills to temporary files instead of holding every key on the heap. Lists of tens of millions of rules can
+ * then be compiled with little more heap than the compiled FST itself.
+ *
+ * Keys are written as UTF-16 code units in big endian order, so that the unsigned byte order used by the sorter is the
+ * same as the char order in which keys must be added to an FST of {@link org.apache.lucene.util.fst.FST.INPUT_TYPE#BYTE2}
+ * labels. Records may carry data after their key, which then sorts records with equal keys.
+ *
+ * Temporary files are written to a new directory under <code>java.io.tmpdir</code>, which is deleted on
+ * {@link #close()}.
+ */
+final class OfflineKeySorter implements Closeable {
+    private final String prefix;
+    private final Path tempDir;
+    private final Directory directory;
+    private final IndexOutput output;
+    private final OfflineSorter.ByteSequencesWriter writer;
+    private boolean sorted;
+
+
+    /**
+     * @param prefix prefix of the names of temporary files
+     * @throws IOException if the temporary directory cannot be created
+     */
+    OfflineKeySorter(String prefix) throws IOException {
+        this.prefix = prefix;
+        tempDir = Files.createTempDirectory(prefix);
+        boolean success = false;
+        try {
+            directory = FSDirectory.open(tempDir);
+            output = directory.createTempOutput(prefix, "unsorted", IOContext.DEFAULT);
+            writer = new OfflineSorter.ByteSequencesWriter(output);
+            success = true;
+        } finally {
+            if (!success) {
+                IOUtils.rm(tempDir);
+            }
+        }
+    }
+
+
+    /**
+     * Add a record to be sorted
+     * @param record the record, whose bytes are copied
+     * @throws IOException if the record cannot be written
+     */
+    void add(BytesRef record) throws IOException {
+        writer.write(record);
+    }
+
+
+    /**
+     * Sort all records added so far. No records may be added afterwards.
+     * @return a reader of the sorted records, which must be closed by the caller
+     * @throws IOException if the records cannot be sorted
+     */
+    OfflineSorter.ByteSequencesReader sort() throws IOException {
+        sorted = true;
+        CodecUtil.writeFooter(output);
+        writer.close();
+        final String name = new OfflineSorter(directory, prefix).sort(output.getName());
+        return new OfflineSorter.ByteSequencesReader(directory.openChecksumInput(name, IOContext.READONCE), name);
+    }
+
+
+    /**
+     * Append the given key to a record
+     */
+    static void appendKey(BytesRefBuilder record, CharSequence key) {
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            record.append((byte) (c >>> 8));
+            record.append((byte) c);
+        }
+    }
+
+
+    /**
+     * Decode a key written by {@link #appendKey(BytesRefBuilder, CharSequence)} into FST input
+     * @param record the record holding the key
+     * @param length length in bytes of the key, which begins the record
+     * @param scratch builder of the FST input
+     * @return the chars of the key
+     */
+    static IntsRef toInput(BytesRef record, int length, IntsRefBuilder scratch) {
+        scratch.clear();
+        for (int i = record.offset; i < record.offset + length; i += 2) {
+            scratch.append(((record.bytes[i] & 0xFF) << 8) | (record.bytes[i + 1] & 0xFF));
+        }
+        return scratch.get();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (sorted) {
+                IOUtils.close(directory);
+            } else {
+                IOUtils.close(writer, directory);
+            }
+        } finally {
+            IOUtils.rm(tempDir);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.elasticsearch.index.analysis.url;
+
+/**
+ * How well an input parsed as a url, which decides whether it is tokenized, tokenized leniently, passed through as a
+ * single token, or rejected. Results are determined without exceptions; the {@link MalformedReason} of an input which
+ * is not well formed tells why it is not.
+ */
+public enum ParseResult {
+    /**
+     * A url accepted by {@link java.net.URL}, with valid escapes if it is to be url decoded
+     */
+    WELL_FORMED,
+
+    /**
+     * A malformed url in which a lenient parse finds a scheme or a host of at least two labels, such as
+     * <code>foo.com/bar?baz=bat</code>, a bare path such as <code>/bar#baz</code>, or a well formed url containing
+     * invalid escapes. Its parts are tokenized leniently if <code>tokenize_malformed</code> is set.
+     */
+    RECOVERABLE,
+
+    /**
+     * An input in which nothing resembling a url can be found, such as <code>foobar</code>. It has no parts to
+     * recover, so it is never tokenized: unless it is rejected, it is passed through as a single token.
+     */
+    GARBAGE
+}
@@ -0,0 +1,218 @@
+package org.elasticsearch.index.analysis.url;
+
+/**
+ * Decodes <code>application/x-www-form-urlencoded</code> text, as {@link java.net.URLDecoder} does with UTF-8, but in
+ * place and without allocating: <code>+</code> is decoded as a space, and each run of <code>%XX</code> escapes is
+ * decoded as UTF-8.
+ *
+ * Unlike {@link java.net.URLDecoder}, an invalid escape such as <code>%2v</code> does not prevent the rest of the text
+ * from being decoded: it is left as is and counted in {@link #invalidEscapes()}. Escaped bytes which are not valid
+ * UTF-8 are replaced with U+FFFD, as {@link java.net.URLDecoder} replaces them.
+ *
+ * Instances are not thread safe.
+ */
+final class PercentDecoder {
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private int invalidEscapes;
+
+    /**
+     * Number of characters written by the most recent call to {@link #decodeSequence(char[], int, int, int, int)}
+     */
+    private int decodedLength;
+
+
+    /**
+     * @param buffer buffer containing the text
+     * @param from offset of the first character of the text
+     * @param to offset following the last character of the text
+     * @return true if the text contains any characters which would be decoded
+     */
+    static boolean needsDecoding(char[] buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '%' || buffer[i] == '+') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Decode the given text in place. Decoded text is never longer than the encoded text.
+     * @param buffer buffer containing the text, which will be overwritten with the decoded text
+     * @param offset offset of the first character of the text
+     * @param length number of characters in the text
+     * @return the number of characters in the decoded text
+     */
+    int decode(char[] buffer, int offset, int length) {
+        return decode(buffer, offset, length, null);
+    }
+
+
+    /**
+     * Decode the given text in place, recording where each decoded character came from. Decoded text is never longer
+     * than the encoded text.
+     * @param buffer buffer containing the text, which will be overwritten with the decoded text
+     * @param offset offset of the first character of the text
+     * @param length number of characters in the text
+     * @param sourceOffsets if not null, receives the offset, relative to <code>offset</code>, of the encoded text from
+     *                      which each decoded character was decoded, followed by <code>length</code>. Must have room for
+     *                      <code>length + 1</code> entries.
+     * @return the number of characters in the decoded text
+     */
+    int decode(char[] buffer, int offset, int length, int[] sourceOffsets) {
+        invalidEscapes = 0;
+        final int end = offset + length;
+        int out = offset;
+        int i = offset;
+        while (i < end) {
+            final int source = i - offset;
+            final int decodedStart = out;
+            final char c = buffer[i];
+            if (c == '+') {
+                buffer[out++] = ' ';
+                i++;
+            } else if (c != '%') {
+                buffer[out++] = c;
+                i++;
+            } else {
+                final int lead = escapedByte(buffer, i, end);
+                if (lead == -1) {
+                    invalidEscapes++;
+                    buffer[out++] = c;
+                    i++;
+                } else {
+                    i = decodeSequence(buffer, i + 3, end, lead, out);
+                    out += decodedLength;
+                }
+            }
+            if (sourceOffsets != null) {
+                for (int j = decodedStart; j < out; j++) {
+                    sourceOffsets[j - offset] = source;
+                }
+            }
+        }
+        if (sourceOffsets != null) {
+            sourceOffsets[out - offset] = length;
+        }
+        return out - offset;
+    }
+
+
+    /**
+     * Decode a UTF-8 sequence of escaped bytes
+     * @param buffer buffer containing the text
+     * @param i offset following the escape of the lead byte
+     * @param end end of the text
+     * @param lead the lead byte of the sequence
+     * @param out offset at which the decoded characters are to be written
+     * @return offset following the last escape of the sequence
+     */
+    private int decodeSequence(char[] buffer, int i, int end, int lead, int out) {
+        decodedLength = 1;
+        if (lead < 0x80) {
+            buffer[out] = (char) lead;
+            return i;
+        }
+        final int continuations;
+        int codePoint;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            continuations = 1;
+            codePoint = lead & 0x1F;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            continuations = 2;
+            codePoint = lead & 0x0F;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            continuations = 3;
+            codePoint = lead & 0x07;
+        } else {
+            buffer[out] = REPLACEMENT;
+            return i;
+        }
+        int decoded = 0;
+        while (decoded < continuations) {
+            final int next = escapedByte(buffer, i, end);
+            if (next == -1 || !isContinuation(lead, next, decoded)) {
+                break;
+            }
+            codePoint = (codePoint << 6) | (next & 0x3F);
+            i += 3;
+            decoded++;
+        }
+        if (decoded < continuations
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            // the sequence is truncated or encodes a surrogate; replace the bytes consumed so far
+            buffer[out] = REPLACEMENT;
+        } else if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            buffer[out] = Character.highSurrogate(codePoint);
+            buffer[out + 1] = Character.lowSurrogate(codePoint);
+            decodedLength = 2;
+        } else {
+            buffer[out] = (char) codePoint;
+        }
+        return i;
+    }
+
+
+    /**
+     * @return the number of invalid escapes left undecoded by the most recent call to
+     * {@link #decode(char[], int, int)}
+     */
+    int invalidEscapes() {
+        return invalidEscapes;
+    }
+
+
+    /**
+     * @return the byte encoded by the escape at the given offset, or -1 if there is no valid escape at the offset
+     */
+    private static int escapedByte(char[] buffer, int offset, int end) {
+        if (offset + 2 >= end || buffer[offset] != '%') {
+            return -1;
+        }
+        final int high = hexDigit(buffer[offset + 1]);
+        final int low = hexDigit(buffer[offset + 2]);
+        if (high == -1 || low == -1) {
+            return -1;
+        }
+        return (high << 4) | low;
+    }
+
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+
+    /**
+     * @param lead the first byte of a UTF-8 sequence
+     * @param b a subsequent byte
+     * @param index index of the subsequent byte among the continuation bytes of the sequence
+     * @return true if the given byte may continue the sequence: overlong encodings and code points above U+10FFFF
+     * are rejected at the first continuation byte
+     */
+    private static boolean isContinuation(int lead, int b, int index) {
+        if (index == 0) {
+            switch (lead) {
+                case 0xE0:
+                    return b >= 0xA0 && b <= 0xBF;
+                case 0xF0:
+                    return b >= 0x90 && b <= 0xBF;
+                case 0xF4:
+                    return b >= 0x80 && b <= 0x8F;
+                default:
+            }
+        }
+        return (b & 0xC0) == 0x80;
+    }
+}
@@ -0,0 +1,321 @@
+package org.elasticsearch.index.analysis.url;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The rules of a <a href="https://publicsuffix.org/">Public Suffix List</a>, compiled into a compact trie of reversed
+ * host labels: the children of the root are top level domains, their children are second level labels, and so on.
+ * The labels of all nodes are stored in a single <code>char[]</code>, and the children of each node are stored
+ * contiguously and in sorted order, so that a host can be looked up by binary search without any allocation.
+ *
+ * Lists are immutable and thread safe. Each list file is compiled once per node, and shared by all indices which use
+ * it, until the file is modified. The default list is compiled from the complete copy of the Public Suffix List which
+ * ships with the plugin, <code>public_suffix_list.dat</code>.
+ *
+ * As with the Public Suffix List's own algorithm, a top level domain which matches no rule is treated as a public
+ * suffix, so that every host with at least two labels has a registered domain.
+ */
+public final class PublicSuffixList {
+    /**
+     * Name of the list used when no list file is configured
+     */
+    static final String DEFAULT_NAME = "default";
+
+    /**
+     * Classpath resource holding the default list
+     */
+    private static final String DEFAULT_RESOURCE = "public_suffix_list.dat";
+
+    private static final CompiledFileCache<PublicSuffixList> LOADED = new CompiledFileCache<>(PublicSuffixList::compile);
+
+    private static final byte RULE = 1;
+    private static final byte EXCEPTION = 1 << 1;
+
+    private static final int NOT_FOUND = -1;
+
+    private final String name;
+    private final char[] labels;
+    private final int[] labelStarts;
+    private final int[] labelEnds;
+    private final int[] firstChildren;
+    private final int[] childCounts;
+    private final byte[] flags;
+
+
+    private PublicSuffixList(String name, TrieNode root) {
+        this.name = name;
+        final List<TrieNode> nodes = new ArrayList<>();
+        final StringBuilder labelPool = new StringBuilder();
+        // number nodes breadth first, so that the children of each node are contiguous
+        final ArrayDeque<TrieNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            final TrieNode node = queue.poll();
+            node.id = nodes.size();
+            nodes.add(node);
+            queue.addAll(node.children.values());
+        }
+        final int size = nodes.size();
+        labelStarts = new int[size];
+        labelEnds = new int[size];
+        firstChildren = new int[size];
+        childCounts = new int[size];
+        flags = new byte[size];
+        for (TrieNode node : nodes) {
+            labelStarts[node.id] = labelPool.length();
+            labelPool.append(node.label);
+            labelEnds[node.id] = labelPool.length();
+            childCounts[node.id] = node.children.size();
+            firstChildren[node.id] = node.children.isEmpty() ? 0 : node.children.values().iterator().next().id;
+            flags[node.id] = node.flags;
+        }
+        labels = labelPool.toString().toCharArray();
+    }
+
+
+    /**
+     * @return the complete Public Suffix List bundled with the plugin. Compiled once per node.
+     */
+    public static PublicSuffixList getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+
+    /**
+     * Load the list in the given file, or return the already loaded list if the file has not been modified since it
+     * was loaded
+     * @param path path of a file in the format of the Public Suffix List
+     * @return the compiled list
+     * @throws IOException if the file cannot be read
+     */
+    public static PublicSuffixList load(Path path) throws IOException {
+        return LOADED.get(path);
+    }
+
+
+    private static PublicSuffixList compile(Path path) throws IOException {
+        // the name identifies the version of the file, so that tokens cached for a previous version are not reused
+        final String name = path + "@" + Files.getLastModifiedTime(path).toMillis();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return parse(name, reader);
+        }
+    }
+
+
+    /**
+     * Compile a list. Each line holds a single rule; blank lines and lines beginning with <code>//</code> are ignored.
+     * Rules beginning with <code>*.</code> match any label in place of the <code>*</code>, and rules beginning with
+     * <code>!</code> are exceptions to such wildcard rules.
+     * @param name a name identifying the list
+     * @param reader reader from which the list will be read
+     * @return the compiled list
+     * @throws IOException if the list cannot be read
+     */
+    static PublicSuffixList parse(String name, Reader reader) throws IOException {
+        final TrieNode root = new TrieNode("");
+        final BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//")) {
+                continue;
+            }
+            // only the first whitespace delimited word of a line is significant
+            String rule = line.split("\\s", 2)[0].toLowerCase(Locale.ROOT);
+            byte flag = RULE;
+            if (rule.startsWith("!")) {
+                flag = EXCEPTION;
+                rule = rule.substring(1);
+            }
+            addRule(root, rule, flag);
+        }
+        return new PublicSuffixList(name, root);
+    }
+
+
+    /**
+     * Compile the Public Suffix List bundled with the plugin
+     * @return the compiled list
+     */
+    private static PublicSuffixList fromResource() {
+        try (Reader reader = new InputStreamReader(PublicSuffixList.class.getResourceAsStream(DEFAULT_RESOURCE),
+                StandardCharsets.UTF_8)) {
+            return parse(DEFAULT_NAME, reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the default public suffix list", e);
+        }
+    }
+
+
+    private static void addRule(TrieNode root, String rule, byte flag) {
+        addLabels(root, rule, flag);
+        final String ascii = toAscii(rule);
+        if (ascii != null && !ascii.equals(rule)) {
+            // hosts in urls are usually punycode encoded
+            addLabels(root, ascii, flag);
+        }
+    }
+
+
+    private static void addLabels(TrieNode root, String rule, byte flag) {
+        final String[] ruleLabels = rule.split("\\.");
+        TrieNode node = root;
+        for (int i = ruleLabels.length - 1; i >= 0; i--) {
+            node = node.children.computeIfAbsent(ruleLabels[i], TrieNode::new);
+        }
+        node.flags |= flag;
+    }
+
+
+    private static String toAscii(String rule) {
+        try {
+            return IDN.toASCII(rule.replace("*", "x")).replaceFirst("^x(?=\\.)", "*");
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * @return the name of this list: the path of the file from which it was loaded followed by <code>@</code> and the
+     * file's modification time in milliseconds, or <code>default</code>
+     */
+    public String name() {
+        return name;
+    }
+
+
+    /**
+     * Find the public suffix of a host, such as <code>co.uk</code> for <code>www.example.co.uk</code>. Hosts are
+     * matched case insensitively.
+     * @param host buffer containing the host
+     * @param from offset of the first character of the host
+     * @param to offset following the last character of the host
+     * @return the offset of the first character of the public suffix, or -1 if the host is empty or ends with a dot
+     */
+    int publicSuffixStart(char[] host, int from, int to) {
+        int suffixStart = NOT_FOUND;
+        int node = 0;
+        int labelEnd = to;
+        while (labelEnd > from) {
+            int labelStart = labelEnd;
+            while (labelStart > from && host[labelStart - 1] != '.') {
+                labelStart--;
+            }
+            final int child = findChild(node, host, labelStart, labelEnd);
+            if (child != NOT_FOUND && (flags[child] & EXCEPTION) != 0) {
+                // the public suffix is the parent of an exception
+                return labelEnd == to ? NOT_FOUND : labelEnd + 1;
+            }
+            // the implicit "*" rule makes any non-empty top level domain a public suffix
+            final boolean implicit = node == 0 && labelStart < labelEnd;
+            if ((child != NOT_FOUND && (flags[child] & RULE) != 0) || implicit || findWildcard(node) != NOT_FOUND) {
+                suffixStart = labelStart;
+            }
+            if (child == NOT_FOUND || labelStart == from) {
+                break;
+            }
+            node = child;
+            labelEnd = labelStart - 1;
+        }
+        return suffixStart;
+    }
+
+
+    /**
+     * Find the registered domain of a host: its public suffix along with one more label, such as
+     * <code>example.co.uk</code> for <code>www.example.co.uk</code>.
+     * @param host buffer containing the host
+     * @param from offset of the first character of the host
+     * @param suffixStart offset of the public suffix, as returned by {@link #publicSuffixStart(char[], int, int)}
+     * @return the offset of the first character of the registered domain, or -1 if the host is itself a public suffix
+     */
+    static int registeredDomainStart(char[] host, int from, int suffixStart) {
+        if (suffixStart - 1 <= from) {
+            return NOT_FOUND;
+        }
+        int start = suffixStart - 1;
+        while (start > from && host[start - 1] != '.') {
+            start--;
+        }
+        return start;
+    }
+
+
+    private int findChild(int node, char[] host, int labelStart, int labelEnd) {
+        int low = firstChildren[node];
+        int high = low + childCounts[node] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compareLabel(mid, host, labelStart, labelEnd);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+
+    private int findWildcard(int node) {
+        // '*' sorts before all characters permitted in host labels
+        final int first = firstChildren[node];
+        if (childCounts[node] > 0 && labelEnds[first] - labelStarts[first] == 1 && labels[labelStarts[first]] == '*'
+                && (flags[first] & RULE) != 0) {
+            return first;
+        }
+        return NOT_FOUND;
+    }
+
+
+    private int compareLabel(int node, char[] host, int labelStart, int labelEnd) {
+        final int start = labelStarts[node];
+        final int length = labelEnds[node] - start;
+        final int hostLength = labelEnd - labelStart;
+        for (int i = 0; i < Math.min(length, hostLength); i++) {
+            char c = host[labelStart + i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            final int cmp = labels[start + i] - c;
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - hostLength;
+    }
+
+
+    private static final class TrieNode {
+        private final String label;
+        private final Map<String, TrieNode> children = new TreeMap<>();
+        private byte flags;
+        private int id;
+
+        private TrieNode(String label) {
+            this.label = label;
+        }
+    }
+
+
+    private static final class DefaultHolder {
+        private static final PublicSuffixList INSTANCE = fromResource();
+    }
+}
@@ -0,0 +1,144 @@
+package org.elasticsearch.index.analysis.url;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of query parameter names and name prefixes, compiled into a compact character trie. The children of each node
+ * are stored contiguously and in sorted order, so that the key of a query parameter can be matched by binary search
+ * straight from the buffer in which the query string is being split, without any allocation.
+ *
+ * Matchers are immutable and thread safe, and are shared by all tokenizers and token filters created by a factory.
+ */
+public final class QueryParameterMatcher {
+    private static final byte NAME = 1;
+    private static final byte PREFIX = 1 << 1;
+
+    private static final int NOT_FOUND = -1;
+
+    private final String description;
+    private final char[] labels;
+    private final int[] firstChildren;
+    private final int[] childCounts;
+    private final byte[] flags;
+
+
+    private QueryParameterMatcher(String description, TrieNode root) {
+        this.description = description;
+        final List<TrieNode> nodes = new ArrayList<>();
+        // number nodes breadth first, so that the children of each node are contiguous
+        final ArrayDeque<TrieNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            final TrieNode node = queue.poll();
+            node.id = nodes.size();
+            nodes.add(node);
+            queue.addAll(node.children.values());
+        }
+        final int size = nodes.size();
+        labels = new char[size];
+        firstChildren = new int[size];
+        childCounts = new int[size];
+        flags = new byte[size];
+        for (TrieNode node : nodes) {
+            labels[node.id] = node.label;
+            childCounts[node.id] = node.children.size();
+            firstChildren[node.id] = node.children.isEmpty() ? 0 : node.children.values().iterator().next().id;
+            flags[node.id] = node.flags;
+        }
+    }
+
+
+    /**
+     * Compile the given patterns. A pattern ending with <code>*</code>, such as <code>utm_*</code>, matches every
+     * parameter whose name begins with the rest of the pattern; any other pattern matches the parameter with exactly
+     * that name. Names are case sensitive.
+     * @param patterns parameter names and prefixes
+     * @return the compiled matcher, or null if no patterns are given
+     */
+    public static QueryParameterMatcher compile(String... patterns) {
+        if (patterns == null || patterns.length == 0) {
+            return null;
+        }
+        final String[] sorted = patterns.clone();
+        Arrays.sort(sorted);
+        final TrieNode root = new TrieNode('\0');
+        for (String pattern : sorted) {
+            if (pattern == null || pattern.isEmpty()) {
+                throw new IllegalArgumentException("Query parameter patterns must not be empty");
+            }
+            final boolean prefix = pattern.endsWith("*");
+            final int length = prefix ? pattern.length() - 1 : pattern.length();
+            TrieNode node = root;
+            for (int i = 0; i < length; i++) {
+                node = node.children.computeIfAbsent(pattern.charAt(i), TrieNode::new);
+            }
+            node.flags |= prefix ? PREFIX : NAME;
+        }
+        return new QueryParameterMatcher(String.join(",", sorted), root);
+    }
+
+
+    /**
+     * @param buffer buffer containing the query parameter
+     * @param from offset of the first character of the parameter
+     * @param to offset following the last character of the parameter
+     * @return true if the name of the given parameter, which ends at its first <code>=</code>, matches any pattern
+     */
+    boolean matches(char[] buffer, int from, int to) {
+        int node = 0;
+        for (int i = from; i < to && buffer[i] != '='; i++) {
+            if ((flags[node] & PREFIX) != 0) {
+                return true;
+            }
+            node = findChild(node, buffer[i]);
+            if (node == NOT_FOUND) {
+                return false;
+            }
+        }
+        return flags[node] != 0;
+    }
+
+
+    private int findChild(int node, char c) {
+        int low = firstChildren[node];
+        int high = low + childCounts[node] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = labels[mid] - c;
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+
+    /**
+     * @return the sorted patterns of this matcher, separated by commas
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+
+
+    private static final class TrieNode {
+        private final char label;
+        private final Map<Character, TrieNode> children = new TreeMap<>();
+        private byte flags;
+        private int id;
+
+        private TrieNode(char label) {
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.elasticsearch.index.analysis.url;
+
+import java.net.MalformedURLException;
+
+/**
+ * Thrown by url tokenizers and token filters which do not allow malformed urls, to reject an input which is not a
+ * well formed url. Inputs are parsed without exceptions, so this is only created once an input has been rejected, and
+ * it records no stack trace: rejecting a flood of bad urls costs little more than accepting them.
+ */
+public final class RejectedURLException extends MalformedURLException {
+    private final ParseResult result;
+    private final MalformedReason reason;
+
+
+    RejectedURLException(ParseResult result, MalformedReason reason, String message) {
+        super(message);
+        this.result = result;
+        this.reason = reason;
+    }
+
+
+    /**
+     * @param tokens tokens of the rejected input, which record its {@link ParseResult} and {@link MalformedReason}
+     * @param buffer buffer containing the rejected input
+     * @param length number of characters in the rejected input
+     * @return an exception describing the rejection
+     */
+    static RejectedURLException of(TokenBuffer tokens, char[] buffer, int length) {
+        final String input = new String(buffer, 0, length);
+        final String message = tokens.malformedReason() == MalformedReason.INVALID_ESCAPE
+                ? "Error performing URL decoding on string: " + input : "Malformed URL: " + input;
+        return new RejectedURLException(tokens.parseResult(), tokens.malformedReason(), message);
+    }
+
+
+    /**
+     * @return how well the rejected input parsed
+     */
+    public ParseResult result() {
+        return result;
+    }
+
+
+    /**
+     * @return why the rejected input is not a well formed url
+     */
+    public MalformedReason reason() {
+        return reason;
+    }
+
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
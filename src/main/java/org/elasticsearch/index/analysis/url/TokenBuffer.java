@@ -0,0 +1,595 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.index.analysis.URLPart;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A reusable buffer of tokens. The characters of all tokens are stored in a single shared <code>char[]</code>, and
+ * each token's attributes are stored in parallel <code>int</code> arrays. The buffer is {@link #reset(boolean)} rather
+ * than reallocated between inputs, so once it has grown to fit the largest input no further allocation takes place.
+ *
+ * Tokens are built by calling {@link #begin()}, appending characters, and then calling
+ * {@link #commit(URLPart, int, int)}. The type of a token is the lower cased name of its part, unless another type is
+ * given with {@link #commit(URLPart, String, int, int)}. Each token also carries {@link URLPartAttribute} flags.
+ *
+ * Each token has a position increment of one, unless it is committed while {@link #setStacked(boolean) stacked}
+ * after another token, in which case it is placed at the position of that token.
+ *
+ * When deduplicating, tokens are indexed by hash in a reusable open addressing table, so that each commit costs
+ * constant time rather than a scan of all tokens already in the buffer.
+ */
+final class TokenBuffer implements Accountable {
+    private static final URLPart[] PARTS = URLPart.values();
+
+    /**
+     * The default type of each part's tokens, by ordinal
+     */
+    private static final String[] PART_TYPES = new String[PARTS.length];
+
+    static {
+        for (URLPart part : PARTS) {
+            PART_TYPES[part.ordinal()] = part.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(TokenBuffer.class);
+
+    private char[] chars = new char[256];
+    private int charsUsed;
+
+    private int[] termStarts = new int[16];
+    private int[] termEnds = new int[16];
+    private int[] parts = new int[16];
+    private String[] types = new String[16];
+    private int[] flags = new int[16];
+    private int[] positionIncrements = new int[16];
+    private int[] startOffsets = new int[16];
+    private int[] endOffsets = new int[16];
+    private int[] hashes = new int[16];
+    private int size;
+
+    /**
+     * Open addressing table of the indices of deduplicated tokens, keyed on their hashes. Each slot holds the index of
+     * a token plus one, or zero if it is empty. Its length is a power of two, and it is kept at most half full.
+     */
+    private int[] table = new int[32];
+
+    /**
+     * True if tokens have been removed or moved since {@link #table} was last built
+     */
+    private boolean tableStale;
+
+    /**
+     * Start of the token currently being built
+     */
+    private int pending;
+
+    private boolean deduplicate;
+
+    /**
+     * True if the input from which the tokens were extracted was not a well formed url
+     */
+    private boolean malformed;
+
+    /**
+     * Number of url parts of the input which contained invalid escapes
+     */
+    private int decodeFailures;
+
+    /**
+     * How well the input from which the tokens were extracted parsed, and why it was not a well formed url
+     */
+    private ParseResult parseResult = ParseResult.WELL_FORMED;
+    private MalformedReason malformedReason = MalformedReason.NONE;
+
+    /**
+     * {@link URLPartAttribute} flags given to every token committed until they are changed
+     */
+    private int currentFlags;
+
+    /**
+     * True if tokens committed from now on are to be placed at the position of the first of them
+     */
+    private boolean stacked;
+
+    /**
+     * True if a token has been committed since {@link #stacked} was last set
+     */
+    private boolean stackStarted;
+
+
+    /**
+     * Remove all tokens from the buffer
+     * @param deduplicate if true, tokens which are identical to a token already in the buffer will be discarded
+     */
+    void reset(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+        malformed = false;
+        decodeFailures = 0;
+        parseResult = ParseResult.WELL_FORMED;
+        malformedReason = MalformedReason.NONE;
+        currentFlags = 0;
+        stacked = false;
+        stackStarted = false;
+        charsUsed = 0;
+        pending = 0;
+        size = 0;
+        Arrays.fill(table, 0);
+        tableStale = false;
+    }
+
+
+    /**
+     * Begin building a new token. Any characters appended since the last {@link #commit(URLPart, int, int)} are
+     * discarded.
+     * @return this buffer
+     */
+    TokenBuffer begin() {
+        charsUsed = pending;
+        return this;
+    }
+
+
+    TokenBuffer append(char c) {
+        ensureChars(1);
+        chars[charsUsed++] = c;
+        return this;
+    }
+
+
+    TokenBuffer append(char[] src, int offset, int length) {
+        ensureChars(length);
+        System.arraycopy(src, offset, chars, charsUsed, length);
+        charsUsed += length;
+        return this;
+    }
+
+
+    TokenBuffer append(CharSequence src) {
+        final int length = src.length();
+        ensureChars(length);
+        for (int i = 0; i < length; i++) {
+            chars[charsUsed++] = src.charAt(i);
+        }
+        return this;
+    }
+
+
+    /**
+     * Finish the token currently being built.
+     * @param part the part of the url from which the token was taken
+     * @param startOffset start offset of the token in the input
+     * @param endOffset end offset of the token in the input
+     * @return false if the token was discarded as a duplicate; true otherwise
+     */
+    boolean commit(URLPart part, int startOffset, int endOffset) {
+        return commit(part, null, startOffset, endOffset);
+    }
+
+
+    /**
+     * Finish the token currently being built, giving it a type other than that of its part.
+     * @param part the part of the url from which the token was taken
+     * @param type type of the token, or null for the type of its part
+     * @param startOffset start offset of the token in the input
+     * @param endOffset end offset of the token in the input
+     * @return false if the token was discarded as a duplicate; true otherwise
+     */
+    boolean commit(URLPart part, String type, int startOffset, int endOffset) {
+        return commit(part, type, 0, startOffset, endOffset);
+    }
+
+
+    /**
+     * Finish the token currently being built, giving it flags in addition to those set by {@link #setFlags(int)}.
+     * @param part the part of the url from which the token was taken
+     * @param type type of the token, or null for the type of its part
+     * @param flags {@link URLPartAttribute} flags of the token
+     * @param startOffset start offset of the token in the input
+     * @param endOffset end offset of the token in the input
+     * @return false if the token was discarded as a duplicate; true otherwise
+     */
+    boolean commit(URLPart part, String type, int flags, int startOffset, int endOffset) {
+        final int start = pending;
+        final int end = charsUsed;
+        int hash = part.ordinal();
+        hash = 31 * hash + startOffset;
+        hash = 31 * hash + endOffset;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        if (deduplicate && contains(hash, part, type, start, end, startOffset, endOffset)) {
+            charsUsed = start;
+            return false;
+        }
+        if (size == termStarts.length) {
+            grow(size + 1);
+        }
+        termStarts[size] = start;
+        termEnds[size] = end;
+        parts[size] = part.ordinal();
+        types[size] = type;
+        this.flags[size] = flags | currentFlags;
+        positionIncrements[size] = stackStarted ? 0 : 1;
+        stackStarted = stacked;
+        startOffsets[size] = startOffset;
+        endOffsets[size] = endOffset;
+        hashes[size] = hash;
+        size++;
+        pending = end;
+        if (deduplicate) {
+            addToTable(size - 1);
+        }
+        return true;
+    }
+
+
+    /**
+     * Replace the term of an existing token with the characters appended since the last call to {@link #begin()}
+     * @param token index of the token
+     * @param flags {@link URLPartAttribute} flags to be added to those of the token
+     */
+    void replaceTerm(int token, int flags) {
+        termStarts[token] = pending;
+        termEnds[token] = charsUsed;
+        this.flags[token] |= flags;
+        pending = charsUsed;
+    }
+
+
+    /**
+     * Shorten the term of the given token
+     * @param token index of the token
+     * @param length new length of the term, which must not exceed its current length
+     */
+    void truncateTerm(int token, int length) {
+        termEnds[token] = termStarts[token] + length;
+    }
+
+
+    /**
+     * Remove the given token, moving the tokens which follow it up by one
+     * @param token index of the token
+     */
+    void remove(int token) {
+        final int moved = size - token - 1;
+        if (moved > 0 && positionIncrements[token + 1] == 0) {
+            // the next token was stacked on the removed one, and takes over its position
+            positionIncrements[token + 1] = positionIncrements[token];
+        }
+        System.arraycopy(termStarts, token + 1, termStarts, token, moved);
+        System.arraycopy(termEnds, token + 1, termEnds, token, moved);
+        System.arraycopy(parts, token + 1, parts, token, moved);
+        System.arraycopy(types, token + 1, types, token, moved);
+        System.arraycopy(flags, token + 1, flags, token, moved);
+        System.arraycopy(positionIncrements, token + 1, positionIncrements, token, moved);
+        System.arraycopy(startOffsets, token + 1, startOffsets, token, moved);
+        System.arraycopy(endOffsets, token + 1, endOffsets, token, moved);
+        System.arraycopy(hashes, token + 1, hashes, token, moved);
+        size--;
+        tableStale = true;
+    }
+
+
+    /**
+     * Remove all but the first tokens
+     * @param size number of tokens to be kept
+     */
+    void truncate(int size) {
+        this.size = Math.min(this.size, size);
+        tableStale = true;
+    }
+
+
+    /**
+     * Convenience method which adds a token consisting of the given characters
+     */
+    boolean add(URLPart part, char[] src, int offset, int length, int startOffset, int endOffset) {
+        return begin().append(src, offset, length).commit(part, startOffset, endOffset);
+    }
+
+
+    private boolean contains(int hash, URLPart part, String type, int start, int end, int startOffset, int endOffset) {
+        if (tableStale) {
+            rebuildTable();
+        }
+        final int mask = table.length - 1;
+        for (int slot = slot(hash, mask); table[slot] != 0; slot = (slot + 1) & mask) {
+            final int i = table[slot] - 1;
+            if (hashes[i] == hash && parts[i] == part.ordinal() && types[i] == type && startOffsets[i] == startOffset
+                    && endOffsets[i] == endOffset && termEquals(i, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private void addToTable(int token) {
+        if (tableStale || 2 * size > table.length) {
+            rebuildTable();
+        } else {
+            insert(token);
+        }
+    }
+
+
+    private void rebuildTable() {
+        if (2 * size > table.length) {
+            table = new int[Integer.highestOneBit(2 * size - 1) << 1];
+        } else {
+            Arrays.fill(table, 0);
+        }
+        for (int i = 0; i < size; i++) {
+            insert(i);
+        }
+        tableStale = false;
+    }
+
+
+    private void insert(int token) {
+        final int mask = table.length - 1;
+        int slot = slot(hashes[token], mask);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = token + 1;
+    }
+
+
+    private static int slot(int hash, int mask) {
+        // spread the bits of the polynomial hash, whose low bits are dominated by the last characters of the term
+        final int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+
+    private boolean termEquals(int token, int start, int end) {
+        final int tokenStart = termStarts[token];
+        if (termEnds[token] - tokenStart != end - start) {
+            return false;
+        }
+        for (int i = 0; i < end - start; i++) {
+            if (chars[tokenStart + i] != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private void ensureChars(int length) {
+        if (charsUsed + length > chars.length) {
+            chars = ArrayUtil.grow(chars, charsUsed + length);
+        }
+    }
+
+
+    private void grow(int minSize) {
+        final int newSize = ArrayUtil.oversize(minSize, Integer.BYTES);
+        termStarts = Arrays.copyOf(termStarts, newSize);
+        termEnds = Arrays.copyOf(termEnds, newSize);
+        parts = Arrays.copyOf(parts, newSize);
+        types = Arrays.copyOf(types, newSize);
+        flags = Arrays.copyOf(flags, newSize);
+        positionIncrements = Arrays.copyOf(positionIncrements, newSize);
+        startOffsets = Arrays.copyOf(startOffsets, newSize);
+        endOffsets = Arrays.copyOf(endOffsets, newSize);
+        hashes = Arrays.copyOf(hashes, newSize);
+    }
+
+
+    /**
+     * @return a copy of this buffer whose arrays are trimmed to its contents
+     */
+    TokenBuffer copy() {
+        TokenBuffer copy = new TokenBuffer();
+        copy.chars = Arrays.copyOf(chars, charsUsed);
+        copy.termStarts = Arrays.copyOf(termStarts, size);
+        copy.termEnds = Arrays.copyOf(termEnds, size);
+        copy.parts = Arrays.copyOf(parts, size);
+        copy.types = Arrays.copyOf(types, size);
+        copy.flags = Arrays.copyOf(flags, size);
+        copy.positionIncrements = Arrays.copyOf(positionIncrements, size);
+        copy.startOffsets = Arrays.copyOf(startOffsets, size);
+        copy.endOffsets = Arrays.copyOf(endOffsets, size);
+        copy.hashes = Arrays.copyOf(hashes, size);
+        copy.charsUsed = copy.pending = charsUsed;
+        copy.size = size;
+        copy.deduplicate = deduplicate;
+        copy.tableStale = true;
+        copy.malformed = malformed;
+        copy.decodeFailures = decodeFailures;
+        copy.parseResult = parseResult;
+        copy.malformedReason = malformedReason;
+        return copy;
+    }
+
+
+    /**
+     * Replace the contents of this buffer with those of the given buffer
+     * @param other the buffer to be copied
+     */
+    void copyFrom(TokenBuffer other) {
+        reset(other.deduplicate);
+        ensureChars(other.charsUsed);
+        System.arraycopy(other.chars, 0, chars, 0, other.charsUsed);
+        if (termStarts.length < other.size) {
+            grow(other.size);
+        }
+        System.arraycopy(other.termStarts, 0, termStarts, 0, other.size);
+        System.arraycopy(other.termEnds, 0, termEnds, 0, other.size);
+        System.arraycopy(other.parts, 0, parts, 0, other.size);
+        System.arraycopy(other.types, 0, types, 0, other.size);
+        System.arraycopy(other.flags, 0, flags, 0, other.size);
+        System.arraycopy(other.positionIncrements, 0, positionIncrements, 0, other.size);
+        System.arraycopy(other.startOffsets, 0, startOffsets, 0, other.size);
+        System.arraycopy(other.endOffsets, 0, endOffsets, 0, other.size);
+        System.arraycopy(other.hashes, 0, hashes, 0, other.size);
+        charsUsed = pending = other.charsUsed;
+        size = other.size;
+        tableStale = true;
+        malformed = other.malformed;
+        decodeFailures = other.decodeFailures;
+        parseResult = other.parseResult;
+        malformedReason = other.malformedReason;
+    }
+
+
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(chars) + RamUsageEstimator.sizeOf(termStarts)
+                + RamUsageEstimator.sizeOf(termEnds) + RamUsageEstimator.sizeOf(parts)
+                + RamUsageEstimator.shallowSizeOf(types) + RamUsageEstimator.sizeOf(flags)
+                + RamUsageEstimator.sizeOf(positionIncrements) + RamUsageEstimator.sizeOf(startOffsets)
+                + RamUsageEstimator.sizeOf(endOffsets) + RamUsageEstimator.sizeOf(hashes)
+                + RamUsageEstimator.sizeOf(table);
+    }
+
+
+    /**
+     * Mark the input from which the tokens are extracted as malformed. Tokens committed from then on are flagged
+     * {@link URLPartAttribute#MALFORMED}.
+     */
+    void setMalformed() {
+        malformed = true;
+        currentFlags |= URLPartAttribute.MALFORMED;
+    }
+
+
+    /**
+     * Set the {@link URLPartAttribute} flags given to tokens committed from now on, other than
+     * {@link URLPartAttribute#MALFORMED}, which is controlled by {@link #setMalformed()}
+     */
+    void setFlags(int flags) {
+        currentFlags = (currentFlags & URLPartAttribute.MALFORMED) | (flags & ~URLPartAttribute.MALFORMED);
+    }
+
+
+    /**
+     * Stack the tokens committed from now on: the first of them is given a position increment of one, and the rest a
+     * position increment of zero. Each call starts a new stack.
+     * @param stacked true to stack tokens, false to give each token its own position
+     */
+    void setStacked(boolean stacked) {
+        this.stacked = stacked;
+        stackStarted = false;
+    }
+
+
+    /**
+     * @return true if the input from which the tokens were extracted was not a well formed url
+     */
+    boolean malformed() {
+        return malformed;
+    }
+
+
+    void addDecodeFailure() {
+        decodeFailures++;
+    }
+
+
+    /**
+     * @return the number of url parts of the input which contained invalid escapes
+     */
+    int decodeFailures() {
+        return decodeFailures;
+    }
+
+
+    /**
+     * Record how well the input from which the tokens are extracted parsed
+     * @param result the classification of the input
+     * @param reason why the input is not a well formed url, or {@link MalformedReason#NONE}
+     */
+    void setParseResult(ParseResult result, MalformedReason reason) {
+        parseResult = result;
+        malformedReason = reason;
+    }
+
+
+    /**
+     * @return how well the input from which the tokens were extracted parsed
+     */
+    ParseResult parseResult() {
+        return parseResult;
+    }
+
+
+    /**
+     * @return why the input from which the tokens were extracted was not a well formed url, or
+     * {@link MalformedReason#NONE} if it was
+     */
+    MalformedReason malformedReason() {
+        return malformedReason;
+    }
+
+
+    /**
+     * @return the number of tokens in the buffer
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * @return the shared character array containing the terms of all tokens
+     */
+    char[] chars() {
+        return chars;
+    }
+
+
+    int termStart(int token) {
+        return termStarts[token];
+    }
+
+
+    int termLength(int token) {
+        return termEnds[token] - termStarts[token];
+    }
+
+
+    URLPart part(int token) {
+        return PARTS[parts[token]];
+    }
+
+
+    /**
+     * @return the type of the given token
+     */
+    String type(int token) {
+        final String type = types[token];
+        return type != null ? type : PART_TYPES[parts[token]];
+    }
+
+
+    /**
+     * @return the {@link URLPartAttribute} flags of the given token
+     */
+    int flags(int token) {
+        return flags[token];
+    }
+
+
+    int positionIncrement(int token) {
+        return positionIncrements[token];
+    }
+
+
+    int startOffset(int token) {
+        return startOffsets[token];
+    }
+
+
+    int endOffset(int token) {
+        return endOffsets[token];
+    }
+}
@@ -0,0 +1,111 @@
+package org.elasticsearch.index.analysis.url;
+
+/**
+ * Computes a 64 bit hash of a sequence of characters, which may be fed to it in several chunks, so that input which is
+ * too large to be held in memory can still be hashed. Characters are combined as by FNV-1a, and the result is mixed
+ * with the MurmurHash3 finalizer. A wide hasher also combines the characters in a second lane, with a different seed
+ * and multiplier, which supplies another 64 bits for a 128 bit hash.
+ *
+ * Instances are not thread safe.
+ */
+final class TokenHasher {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private static final long WIDE_OFFSET_BASIS = 0x6c62272e07bb0142L;
+    private static final long WIDE_PRIME = 0x9e3779b97f4a7c15L;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Number of characters in the hexadecimal form of a hash
+     */
+    static final int HEX_LENGTH = 16;
+
+    /**
+     * If true, {@link #wideHash()} is computed along with {@link #hash()}
+     */
+    private final boolean wide;
+
+    private long state = OFFSET_BASIS;
+    private long wideState = WIDE_OFFSET_BASIS;
+
+
+    TokenHasher() {
+        this(false);
+    }
+
+
+    /**
+     * @param wide true if the hasher is to compute {@link #wideHash()} as well as {@link #hash()}
+     */
+    TokenHasher(boolean wide) {
+        this.wide = wide;
+    }
+
+
+    TokenHasher reset() {
+        state = OFFSET_BASIS;
+        wideState = WIDE_OFFSET_BASIS;
+        return this;
+    }
+
+
+    TokenHasher update(char[] buffer, int offset, int length) {
+        long h = state;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= buffer[i];
+            h *= PRIME;
+        }
+        state = h;
+        if (wide) {
+            long w = wideState;
+            for (int i = offset; i < offset + length; i++) {
+                w ^= buffer[i];
+                w *= WIDE_PRIME;
+            }
+            wideState = w;
+        }
+        return this;
+    }
+
+
+    /**
+     * @return the hash of all characters passed to {@link #update(char[], int, int)} since the last {@link #reset()}
+     */
+    long hash() {
+        return mix(state);
+    }
+
+
+    /**
+     * @return the second 64 bits of the 128 bit hash of all characters passed to {@link #update(char[], int, int)}
+     * since the last {@link #reset()}, which are only computed by a wide hasher
+     */
+    long wideHash() {
+        if (!wide) {
+            throw new IllegalStateException("Wide hashes are not computed by this hasher");
+        }
+        return mix(wideState);
+    }
+
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+
+    /**
+     * Append the given hash to the token being built, as {@link #HEX_LENGTH} lower case hex digits
+     */
+    static void appendHex(long hash, TokenBuffer tokens) {
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            tokens.append(HEX_DIGITS[(int) (hash >>> shift) & 0xF]);
+        }
+    }
+}
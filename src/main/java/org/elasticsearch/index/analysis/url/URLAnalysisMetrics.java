@@ -0,0 +1,115 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative counters describing the work done by a single url tokenizer or token filter definition, shared by all of
+ * its instances. Counters are striped, so that concurrent analysis threads do not contend when updating them.
+ */
+public final class URLAnalysisMetrics {
+    private static final URLPart[] PARTS = URLPart.values();
+
+    private final LongAdder urls = new LongAdder();
+    private final LongAdder[] tokens = new LongAdder[PARTS.length];
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder decodeFailures = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder analysisNanos = new LongAdder();
+
+
+    public URLAnalysisMetrics() {
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = new LongAdder();
+        }
+    }
+
+
+    /**
+     * Record the analysis of a single url
+     * @param result the tokens extracted from the url
+     * @param rejected true if the url was rejected, in which case no tokens were emitted
+     * @param partCounts scratch space with room for a count per {@link URLPart}
+     * @param cacheHit true if the tokens were taken from the cache
+     * @param nanos time taken to analyze the url
+     */
+    void record(TokenBuffer result, boolean rejected, int[] partCounts, boolean cacheHit, long nanos) {
+        urls.increment();
+        analysisNanos.add(nanos);
+        if (cacheHit) {
+            cacheHits.increment();
+        }
+        if (result.decodeFailures() > 0) {
+            decodeFailures.add(result.decodeFailures());
+        }
+        if (rejected) {
+            if (result.decodeFailures() == 0) {
+                // the url itself could not be parsed
+                malformed.increment();
+            }
+            return;
+        }
+        if (result.malformed()) {
+            malformed.increment();
+        }
+        for (int i = 0; i < result.size(); i++) {
+            partCounts[result.part(i).ordinal()]++;
+        }
+        for (int i = 0; i < partCounts.length; i++) {
+            if (partCounts[i] > 0) {
+                tokens[i].add(partCounts[i]);
+                partCounts[i] = 0;
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of urls analyzed
+     */
+    public long getUrls() {
+        return urls.sum();
+    }
+
+
+    /**
+     * @param part a url part
+     * @return the number of tokens emitted from the given part
+     */
+    public long getTokens(URLPart part) {
+        return tokens[part.ordinal()].sum();
+    }
+
+
+    /**
+     * @return the number of urls which were not well formed, whether they were rejected or leniently tokenized
+     */
+    public long getMalformed() {
+        return malformed.sum();
+    }
+
+
+    /**
+     * @return the number of url parts which contained invalid escapes
+     */
+    public long getDecodeFailures() {
+        return decodeFailures.sum();
+    }
+
+
+    /**
+     * @return the number of urls whose tokens were taken from the node level cache
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+
+    /**
+     * @return the total time spent analyzing urls, in nanoseconds
+     */
+    public long getAnalysisNanos() {
+        return analysisNanos.sum();
+    }
+}
@@ -0,0 +1,47 @@
+package org.elasticsearch.index.analysis.url;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node level registry of {@link URLAnalysisMetrics}, keyed by index, by the kind of analysis component, and by the
+ * name under which the component is defined in the index's analysis settings.
+ */
+public final class URLAnalysisStats {
+    public static final String TOKENIZERS = "tokenizers";
+    public static final String FILTERS = "filters";
+
+    private final ConcurrentHashMap<String, Map<String, Map<String, URLAnalysisMetrics>>> indices =
+            new ConcurrentHashMap<>();
+
+
+    /**
+     * @param index name of the index in which the component is defined
+     * @param kind {@link #TOKENIZERS} or {@link #FILTERS}
+     * @param name name of the component
+     * @return the metrics of the given component, which are created if they don't exist yet
+     */
+    public URLAnalysisMetrics metrics(String index, String kind, String name) {
+        return indices.computeIfAbsent(index, i -> new ConcurrentHashMap<>())
+                .computeIfAbsent(kind, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, n -> new URLAnalysisMetrics());
+    }
+
+
+    /**
+     * @return an unmodifiable view of the metrics of each component, by index, kind, and name
+     */
+    public Map<String, Map<String, Map<String, URLAnalysisMetrics>>> indices() {
+        return Collections.unmodifiableMap(indices);
+    }
+
+
+    /**
+     * Discard the metrics of all components of the given index
+     * @param index name of the index
+     */
+    public void removeIndex(String index) {
+        indices.remove(index);
+    }
+}
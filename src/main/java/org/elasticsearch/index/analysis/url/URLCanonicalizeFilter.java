@@ -0,0 +1,38 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+
+/**
+ * Rewrites each token which is a well formed url into its canonical form, as described by {@link URLCanonicalizer}.
+ * Other tokens are passed through unchanged. Offsets are left as they are, spanning the url as it was written.
+ *
+ * Placed before a {@link URLTokenFilter}, this causes different spellings of the same url to produce the same tokens.
+ */
+public final class URLCanonicalizeFilter extends TokenFilter {
+    public static final String NAME = "url_canonicalize";
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+
+    private final URLCanonicalizer canonicalizer = new URLCanonicalizer();
+
+
+    public URLCanonicalizeFilter(TokenStream input) {
+        super(input);
+    }
+
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!input.incrementToken()) {
+            return false;
+        }
+        if (canonicalizer.canonicalize(termAttribute.buffer(), termAttribute.length())) {
+            termAttribute.copyBuffer(canonicalizer.output(), 0, canonicalizer.length());
+        }
+        return true;
+    }
+}
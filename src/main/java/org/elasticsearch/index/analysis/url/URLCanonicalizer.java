@@ -0,0 +1,293 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.elasticsearch.index.analysis.URLPart;
+
+/**
+ * Rewrites urls into a canonical form, so that different spellings of the same url produce the same terms. The scheme
+ * and host are lower cased, default and empty ports are dropped, dot segments are removed from the path as described
+ * by <a href="https://tools.ietf.org/html/rfc3986#section-5.2.4">RFC 3986</a>, the hex digits of percent escapes are
+ * upper cased, empty query parameters are dropped and the rest are sorted, and an empty query string or ref is
+ * dropped along with its delimiter. A url with an authority but no path is given the path <code>/</code>.
+ *
+ * The url is written to a reusable output buffer in a single pass following the scan of its parts; only the query
+ * parameters are moved again, once sorted. Instances are not thread safe.
+ */
+final class URLCanonicalizer {
+    private final URLScanner scanner = new URLScanner();
+
+    /**
+     * Holds the canonical form of the most recent url. Reused across urls.
+     */
+    private char[] output = new char[256];
+    private int length;
+
+    /**
+     * Offsets of each query parameter within {@link #output} while the query string is being sorted
+     */
+    private int[] paramStarts = new int[16];
+    private int[] paramEnds = new int[16];
+    private int paramCount;
+
+    /**
+     * Holds the query parameters while they are written back to {@link #output} in sorted order. Reused across urls.
+     */
+    private char[] scratch = new char[256];
+
+    private final InPlaceMergeSorter paramSorter = new InPlaceMergeSorter() {
+        @Override
+        protected int compare(int i, int j) {
+            return compareParams(i, j);
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+            swapParams(i, j);
+        }
+    };
+
+
+    /**
+     * Canonicalize the given url. The result is available from {@link #output()} and {@link #length()}.
+     * @param buffer buffer containing the url
+     * @param length number of characters in the url
+     * @return false if the characters are not a well formed url, in which case they are left as they are
+     */
+    boolean canonicalize(char[] buffer, int length) {
+        if (!scanner.scan(buffer, 0, length)) {
+            return false;
+        }
+        // the canonical form is at most one character longer than the url: the path added to a url without one
+        if (output.length < length + 1) {
+            output = ArrayUtil.grow(output, length + 1);
+        }
+        this.length = 0;
+        appendLowerCase(buffer, scanner.start(URLPart.PROTOCOL), scanner.end(URLPart.PROTOCOL));
+        output[this.length++] = ':';
+        if (scanner.hasAuthority()) {
+            output[this.length++] = '/';
+            output[this.length++] = '/';
+            if (scanner.userInfoEnd() > scanner.userInfoStart()) {
+                appendEncoded(buffer, scanner.userInfoStart(), scanner.userInfoEnd());
+                output[this.length++] = '@';
+            }
+            appendLowerCase(buffer, scanner.start(URLPart.HOST), scanner.end(URLPart.HOST));
+            appendPort(buffer);
+        }
+        final int pathStart = scanner.start(URLPart.PATH);
+        final int pathEnd = scanner.end(URLPart.PATH);
+        if (pathStart == pathEnd) {
+            if (scanner.hasAuthority()) {
+                output[this.length++] = '/';
+            }
+        } else if (buffer[pathStart] == '/') {
+            appendPath(buffer, pathStart, pathEnd);
+        } else {
+            appendEncoded(buffer, pathStart, pathEnd);
+        }
+        if (scanner.has(URLPart.QUERY)) {
+            appendQuery(buffer, scanner.start(URLPart.QUERY), scanner.end(URLPart.QUERY));
+        }
+        if (scanner.has(URLPart.REF)) {
+            output[this.length++] = '#';
+            appendEncoded(buffer, scanner.start(URLPart.REF), scanner.end(URLPart.REF));
+        }
+        return true;
+    }
+
+
+    /**
+     * @return the buffer holding the canonical form of the most recent url
+     */
+    char[] output() {
+        return output;
+    }
+
+
+    /**
+     * @return the number of characters in the canonical form of the most recent url
+     */
+    int length() {
+        return length;
+    }
+
+
+    private void appendLowerCase(char[] buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            output[length++] = Character.toLowerCase(buffer[i]);
+        }
+    }
+
+
+    /**
+     * Append the given characters, upper casing the hex digits of percent escapes
+     */
+    private void appendEncoded(char[] buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final char c = buffer[i];
+            output[length++] = c;
+            if (c == '%' && i + 2 < to && isHexDigit(buffer[i + 1]) && isHexDigit(buffer[i + 2])) {
+                output[length++] = toUpperCase(buffer[++i]);
+                output[length++] = toUpperCase(buffer[++i]);
+            }
+        }
+    }
+
+
+    /**
+     * Append the explicit port of the url, without leading zeros, unless it is empty or the default port of the scheme
+     */
+    private void appendPort(char[] buffer) {
+        if (!scanner.has(URLPart.PORT)) {
+            return;
+        }
+        int start = scanner.start(URLPart.PORT);
+        final int end = scanner.end(URLPart.PORT);
+        while (start < end - 1 && buffer[start] == '0') {
+            start++;
+        }
+        final String defaultPort = scanner.defaultPort();
+        if (defaultPort != null && regionEquals(buffer, start, end, defaultPort)) {
+            return;
+        }
+        output[length++] = ':';
+        System.arraycopy(buffer, start, output, length, end - start);
+        length += end - start;
+    }
+
+
+    /**
+     * Append the given absolute path, removing <code>.</code> and <code>..</code> segments
+     */
+    private void appendPath(char[] buffer, int from, int to) {
+        final int base = length;
+        int i = from;
+        while (i < to) {
+            // buffer[i] is the slash preceding a segment
+            final int segmentStart = i + 1;
+            int segmentEnd = segmentStart;
+            while (segmentEnd < to && buffer[segmentEnd] != '/') {
+                segmentEnd++;
+            }
+            final boolean last = segmentEnd == to;
+            final int segmentLength = segmentEnd - segmentStart;
+            if (segmentLength == 1 && buffer[segmentStart] == '.') {
+                if (last) {
+                    output[length++] = '/';
+                }
+            } else if (segmentLength == 2 && buffer[segmentStart] == '.' && buffer[segmentStart + 1] == '.') {
+                // remove the last segment written, along with its slash
+                while (length > base && output[--length] != '/') {
+                    // keep going
+                }
+                if (last) {
+                    output[length++] = '/';
+                }
+            } else {
+                output[length++] = '/';
+                appendEncoded(buffer, segmentStart, segmentEnd);
+            }
+            i = segmentEnd;
+        }
+    }
+
+
+    /**
+     * Append the non-empty parameters of the given query string in sorted order, preceded by <code>?</code> if there
+     * are any
+     */
+    private void appendQuery(char[] buffer, int from, int to) {
+        final int queryStart = length + 1;
+        length = queryStart;
+        paramCount = 0;
+        int paramStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || buffer[i] == '&') {
+                if (i > paramStart) {
+                    if (paramCount == paramStarts.length) {
+                        paramStarts = ArrayUtil.grow(paramStarts, paramCount + 1);
+                        paramEnds = ArrayUtil.grow(paramEnds, paramCount + 1);
+                    }
+                    paramStarts[paramCount] = length;
+                    appendEncoded(buffer, paramStart, i);
+                    paramEnds[paramCount++] = length;
+                }
+                paramStart = i + 1;
+            }
+        }
+        if (paramCount == 0) {
+            length = queryStart - 1;
+            return;
+        }
+        output[queryStart - 1] = '?';
+        if (paramCount == 1) {
+            return;
+        }
+        paramSorter.sort(0, paramCount);
+        // the parameters were written without separators; write them back in order, separated by '&'
+        final int paramsLength = length - queryStart;
+        if (scratch.length < paramsLength) {
+            scratch = ArrayUtil.grow(scratch, paramsLength);
+        }
+        System.arraycopy(output, queryStart, scratch, 0, paramsLength);
+        length = queryStart;
+        for (int i = 0; i < paramCount; i++) {
+            if (i > 0) {
+                output[length++] = '&';
+            }
+            final int start = paramStarts[i] - queryStart;
+            final int paramLength = paramEnds[i] - paramStarts[i];
+            System.arraycopy(scratch, start, output, length, paramLength);
+            length += paramLength;
+        }
+    }
+
+
+    private int compareParams(int i, int j) {
+        final int iStart = paramStarts[i];
+        final int jStart = paramStarts[j];
+        final int iLength = paramEnds[i] - iStart;
+        final int jLength = paramEnds[j] - jStart;
+        for (int k = 0; k < Math.min(iLength, jLength); k++) {
+            final int cmp = output[iStart + k] - output[jStart + k];
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return iLength - jLength;
+    }
+
+
+    private void swapParams(int i, int j) {
+        final int start = paramStarts[i];
+        final int end = paramEnds[i];
+        paramStarts[i] = paramStarts[j];
+        paramEnds[i] = paramEnds[j];
+        paramStarts[j] = start;
+        paramEnds[j] = end;
+    }
+
+
+    private static boolean regionEquals(char[] buffer, int start, int end, String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != s.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+
+    private static char toUpperCase(char hexDigit) {
+        return hexDigit >= 'a' && hexDigit <= 'f' ? (char) (hexDigit - ('a' - 'A')) : hexDigit;
+    }
+}
@@ -0,0 +1,94 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.elasticsearch.index.analysis.URLPart;
+
+import java.io.IOException;
+
+/**
+ * Follows each token which is a well formed url with a token for each category assigned to the url by a
+ * {@link CategoryDictionary}, such as <code>category:news</code>, at the same position. Other tokens are passed
+ * through unchanged.
+ *
+ * Placed before a {@link URLTokenFilter}, the category tokens must be let through with its <code>passthrough</code>
+ * option; placed after a {@link URLTokenFilter} emitting whole urls, they are added to its tokens.
+ */
+public final class URLCategoryFilter extends TokenFilter {
+    public static final String NAME = "url_category";
+
+    /**
+     * Type of the category tokens
+     */
+    public static final String CATEGORY_TYPE = "category";
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final TypeAttribute typeAttribute = addAttribute(TypeAttribute.class);
+    private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute positionAttribute = addAttribute(PositionIncrementAttribute.class);
+    private final URLPartAttribute partAttribute = addAttribute(URLPartAttribute.class);
+
+    private final CategoryDictionary.Matcher matcher;
+    private final String prefix;
+
+    private final URLScanner scanner = new URLScanner();
+
+    /**
+     * Categories of the last url, which are yet to be emitted
+     */
+    private String[] categories;
+    private int categoryIndex;
+    private int urlStartOffset;
+    private int urlEndOffset;
+
+
+    /**
+     * @param input the token stream to be filtered
+     * @param dictionary the dictionary against which urls are matched
+     * @param prefix prefix of the term of each category token
+     */
+    public URLCategoryFilter(TokenStream input, CategoryDictionary dictionary, String prefix) {
+        super(input);
+        this.matcher = dictionary.matcher();
+        this.prefix = prefix;
+    }
+
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (categories != null && categoryIndex < categories.length) {
+            clearAttributes();
+            termAttribute.append(prefix).append(categories[categoryIndex++]);
+            typeAttribute.setType(CATEGORY_TYPE);
+            offsetAttribute.setOffset(urlStartOffset, urlEndOffset);
+            positionAttribute.setPositionIncrement(0);
+            partAttribute.setPart(URLPart.WHOLE);
+            partAttribute.setFlags(URLPartAttribute.SYNTHETIC);
+            return true;
+        }
+        if (!input.incrementToken()) {
+            return false;
+        }
+        categories = null;
+        final char[] buffer = termAttribute.buffer();
+        if (scanner.scan(buffer, 0, termAttribute.length()) && scanner.has(URLPart.HOST)) {
+            categories = matcher.match(buffer, scanner.start(URLPart.HOST), scanner.end(URLPart.HOST),
+                    scanner.start(URLPart.PATH), scanner.end(URLPart.PATH));
+            categoryIndex = 0;
+            urlStartOffset = offsetAttribute.startOffset();
+            urlEndOffset = offsetAttribute.endOffset();
+        }
+        return true;
+    }
+
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        categories = null;
+    }
+}
@@ -0,0 +1,128 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.elasticsearch.index.analysis.DomainListMode;
+import org.elasticsearch.index.analysis.URLPart;
+
+import java.io.IOException;
+
+/**
+ * Matches the host of each token which is a well formed url against a {@link DomainList}, and keeps, drops, or tags
+ * the token according to its {@link DomainListMode}. A token which is not a well formed url is matched as a host, so
+ * that the filter may also follow a {@link URLTokenFilter} emitting hosts.
+ *
+ * Placed before a {@link URLTokenFilter}, this keeps, drops, or tags all tokens of the url.
+ */
+public final class URLDomainListFilter extends TokenFilter {
+    public static final String NAME = "url_domain_list";
+
+    /**
+     * Type of the tag tokens emitted in {@link DomainListMode#TAG} mode
+     */
+    public static final String TAG_TYPE = "domain_list";
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final TypeAttribute typeAttribute = addAttribute(TypeAttribute.class);
+    private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute positionAttribute = addAttribute(PositionIncrementAttribute.class);
+    private final URLPartAttribute partAttribute = addAttribute(URLPartAttribute.class);
+
+    private final DomainList.Matcher matcher;
+    private final DomainListMode mode;
+    private final String tag;
+
+    private final URLScanner scanner = new URLScanner();
+
+    /**
+     * Positions of the tokens which have been dropped since the last token was emitted
+     */
+    private int skippedPositions;
+
+    /**
+     * True if a tag token is to be emitted for the last token
+     */
+    private boolean tagPending;
+    private int tagStartOffset;
+    private int tagEndOffset;
+
+
+    /**
+     * @param input the token stream to be filtered
+     * @param domainList the list against which hosts are matched
+     * @param mode what is done with tokens whose hosts are in the list
+     * @param tag term of the tag tokens emitted in {@link DomainListMode#TAG} mode
+     */
+    public URLDomainListFilter(TokenStream input, DomainList domainList, DomainListMode mode, String tag) {
+        super(input);
+        this.matcher = domainList.matcher();
+        this.mode = mode;
+        this.tag = tag;
+    }
+
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (tagPending) {
+            tagPending = false;
+            clearAttributes();
+            termAttribute.append(tag);
+            typeAttribute.setType(TAG_TYPE);
+            offsetAttribute.setOffset(tagStartOffset, tagEndOffset);
+            positionAttribute.setPositionIncrement(0);
+            partAttribute.setPart(URLPart.WHOLE);
+            partAttribute.setFlags(URLPartAttribute.SYNTHETIC);
+            return true;
+        }
+        while (input.incrementToken()) {
+            final boolean listed = isListed();
+            if (mode == DomainListMode.TAG || listed == (mode == DomainListMode.KEEP)) {
+                if (skippedPositions != 0) {
+                    positionAttribute.setPositionIncrement(positionAttribute.getPositionIncrement() + skippedPositions);
+                    skippedPositions = 0;
+                }
+                if (listed && mode == DomainListMode.TAG) {
+                    tagPending = true;
+                    tagStartOffset = offsetAttribute.startOffset();
+                    tagEndOffset = offsetAttribute.endOffset();
+                }
+                return true;
+            }
+            skippedPositions += positionAttribute.getPositionIncrement();
+        }
+        return false;
+    }
+
+
+    /**
+     * @return true if the host of the current token is in the list
+     */
+    private boolean isListed() throws IOException {
+        final char[] buffer = termAttribute.buffer();
+        final int length = termAttribute.length();
+        if (!scanner.scan(buffer, 0, length)) {
+            return matcher.matches(buffer, 0, length);
+        }
+        return scanner.has(URLPart.HOST)
+                && matcher.matches(buffer, scanner.start(URLPart.HOST), scanner.end(URLPart.HOST));
+    }
+
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        positionAttribute.setPositionIncrement(positionAttribute.getPositionIncrement() + skippedPositions);
+    }
+
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        skippedPositions = 0;
+        tagPending = false;
+    }
+}
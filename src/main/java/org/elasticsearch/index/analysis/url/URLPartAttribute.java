@@ -0,0 +1,45 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.util.Attribute;
+import org.elasticsearch.index.analysis.URLPart;
+
+/**
+ * The {@link URLPart} from which a token was extracted, along with flags describing how it was extracted. Set by
+ * {@link URLTokenizer} and {@link URLTokenFilter} so that downstream filters can branch on the part of a token without
+ * parsing its type.
+ */
+public interface URLPartAttribute extends Attribute {
+    /**
+     * The token's text was url decoded, and may differ from the text between its offsets
+     */
+    int DECODED = 1;
+
+    /**
+     * The token's text was not taken from the input, such as a port inferred from the protocol
+     */
+    int SYNTHETIC = 1 << 1;
+
+    /**
+     * The token was extracted from an input which was not a well formed url
+     */
+    int MALFORMED = 1 << 2;
+
+    /**
+     * @return the part of the url from which the token was extracted, or null if unset
+     */
+    URLPart getPart();
+
+    void setPart(URLPart part);
+
+    /**
+     * @return a bit set of {@link #DECODED}, {@link #SYNTHETIC}, and {@link #MALFORMED}
+     */
+    int getFlags();
+
+    void setFlags(int flags);
+
+    /**
+     * @return true if all of the given flags are set
+     */
+    boolean hasFlags(int flags);
+}
@@ -0,0 +1,84 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+import org.elasticsearch.index.analysis.URLPart;
+
+/**
+ * Default implementation of {@link URLPartAttribute}
+ */
+public final class URLPartAttributeImpl extends AttributeImpl implements URLPartAttribute {
+    private URLPart part;
+    private int flags;
+
+
+    @Override
+    public URLPart getPart() {
+        return part;
+    }
+
+
+    @Override
+    public void setPart(URLPart part) {
+        this.part = part;
+    }
+
+
+    @Override
+    public int getFlags() {
+        return flags;
+    }
+
+
+    @Override
+    public void setFlags(int flags) {
+        this.flags = flags;
+    }
+
+
+    @Override
+    public boolean hasFlags(int flags) {
+        return (this.flags & flags) == flags;
+    }
+
+
+    @Override
+    public void clear() {
+        part = null;
+        flags = 0;
+    }
+
+
+    @Override
+    public void copyTo(AttributeImpl target) {
+        URLPartAttribute attribute = (URLPartAttribute) target;
+        attribute.setPart(part);
+        attribute.setFlags(flags);
+    }
+
+
+    @Override
+    public void reflectWith(AttributeReflector reflector) {
+        reflector.reflect(URLPartAttribute.class, "part", part);
+        reflector.reflect(URLPartAttribute.class, "flags", flags);
+    }
+
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof URLPartAttributeImpl)) {
+            return false;
+        }
+        URLPartAttributeImpl that = (URLPartAttributeImpl) other;
+        return part == that.part && flags == that.flags;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * (part == null ? 0 : part.ordinal()) + flags;
+    }
+}
@@ -0,0 +1,446 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+
+/**
+ * A reusable, single pass URL scanner. Rather than building a {@link java.net.URL} for every input, the scanner walks
+ * the given characters once and records the start and end offsets of each part of the URL. Tokens can then be cut
+ * directly from the input without searching it again.
+ *
+ * The scanner accepts the same URLs which {@link java.net.URL} accepts with the JDK's built-in protocol handlers:
+ * the scheme must be one of {@link #KNOWN_SCHEMES}, an authority may contain user info, a host (or a bracketed IPv6
+ * literal), and an optional numeric port. As with the JDK's <code>jar</code> protocol handler, a <code>jar:</code> url
+ * must contain <code>!/</code>, and the url of the archive preceding it must itself be a well-formed url which is not a
+ * <code>jar:</code> url.
+ *
+ * Instances are not thread safe, and are intended to be reused by a single tokenizer.
+ */
+final class URLScanner {
+    /**
+     * Schemes for which the JDK provides a protocol handler. Any other scheme causes {@link java.net.URL} to reject
+     * the URL, so the scanner does the same.
+     */
+    static final String[] KNOWN_SCHEMES = {"http", "https", "ftp", "file", "jar", "mailto"};
+
+    private static final byte ALPHA = 1;
+    private static final byte DIGIT = 1 << 1;
+    private static final byte SCHEME = 1 << 2;
+    private static final byte AUTHORITY_END = 1 << 3;
+    private static final byte PATH_END = 1 << 4;
+
+    /**
+     * Character classes for all ASCII characters. Non-ASCII characters have no class.
+     */
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = ALPHA | SCHEME;
+            CHAR_CLASS[Character.toUpperCase(c)] = ALPHA | SCHEME;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASS[c] = DIGIT | SCHEME;
+        }
+        CHAR_CLASS['+'] = SCHEME;
+        CHAR_CLASS['-'] = SCHEME;
+        CHAR_CLASS['.'] = SCHEME;
+        CHAR_CLASS['/'] = AUTHORITY_END;
+        CHAR_CLASS['?'] = AUTHORITY_END | PATH_END;
+        CHAR_CLASS['#'] = AUTHORITY_END | PATH_END;
+    }
+
+    private final InetAddressParser addressParser = new InetAddressParser();
+
+    private char[] buffer;
+
+    private int urlStart;
+    private int urlEnd;
+    private int schemeStart;
+    private int schemeEnd;
+    private int userInfoStart;
+    private int userInfoEnd;
+    private int hostStart;
+    private int hostEnd;
+    private int portStart;
+    private int portEnd;
+    private int pathStart;
+    private int pathEnd;
+    private int queryStart;
+    private int queryEnd;
+    private int refStart;
+    private int refEnd;
+    private boolean hasAuthority;
+
+    /**
+     * Why the most recently scanned characters are not a well-formed URL
+     */
+    private MalformedReason failure = MalformedReason.NONE;
+
+
+    private static boolean is(char c, byte charClass) {
+        return c < 128 && (CHAR_CLASS[c] & charClass) != 0;
+    }
+
+
+    /**
+     * Scan the given characters as a URL.
+     * @param buffer buffer containing the URL
+     * @param offset offset of the first character of the URL in the buffer
+     * @param length number of characters in the URL
+     * @return true if the characters contain a well-formed URL; false otherwise, in which case {@link #failure()} tells
+     * why they do not
+     */
+    boolean scan(char[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        clear();
+        int start = offset;
+        int end = offset + length;
+        // java.net.URL ignores leading and trailing whitespace and control characters
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        urlStart = start;
+        urlEnd = end;
+
+        // scheme
+        int i = start;
+        if (i == end) {
+            return fail(MalformedReason.EMPTY);
+        }
+        if (!is(buffer[i], ALPHA)) {
+            return fail(MalformedReason.MISSING_SCHEME);
+        }
+        while (i < end && is(buffer[i], SCHEME)) {
+            i++;
+        }
+        if (i == end || buffer[i] != ':') {
+            return fail(MalformedReason.MISSING_SCHEME);
+        }
+        if (!isKnownScheme(start, i)) {
+            return fail(MalformedReason.UNKNOWN_SCHEME);
+        }
+        if (regionMatchesIgnoreCase("jar", start, i)) {
+            return scanJar(start, i, end);
+        }
+        schemeStart = start;
+        schemeEnd = i++;
+
+        // authority
+        if (i + 1 < end && buffer[i] == '/' && buffer[i + 1] == '/') {
+            hasAuthority = true;
+            i += 2;
+            int authorityStart = i;
+            int at = -1;
+            while (i < end && !is(buffer[i], AUTHORITY_END)) {
+                if (buffer[i] == '@') {
+                    at = i;
+                }
+                i++;
+            }
+            int authorityEnd = i;
+            if (at != -1) {
+                userInfoStart = authorityStart;
+                userInfoEnd = at;
+                authorityStart = at + 1;
+            }
+            if (!scanHostAndPort(authorityStart, authorityEnd)) {
+                return false;
+            }
+        }
+
+        // path
+        pathStart = i;
+        while (i < end && !is(buffer[i], PATH_END)) {
+            i++;
+        }
+        pathEnd = i;
+
+        // query
+        if (i < end && buffer[i] == '?') {
+            queryStart = ++i;
+            while (i < end && buffer[i] != '#') {
+                i++;
+            }
+            queryEnd = i;
+        }
+
+        // ref
+        if (i < end && buffer[i] == '#') {
+            refStart = i + 1;
+            refEnd = end;
+        }
+        return true;
+    }
+
+
+    /**
+     * Scan a <code>jar:</code> url, which has no authority: everything between the scheme and the query is its path.
+     * @param start offset of the scheme
+     * @param colon offset of the <code>:</code> following the scheme
+     * @param end offset following the last character of the url
+     */
+    private boolean scanJar(int start, int colon, int end) {
+        int refOrEnd = colon + 1;
+        while (refOrEnd < end && buffer[refOrEnd] != '#') {
+            refOrEnd++;
+        }
+        // the archive url ends at the last "!/" preceding the ref
+        int bang = refOrEnd - 2;
+        while (bang > colon && !(buffer[bang] == '!' && buffer[bang + 1] == '/')) {
+            bang--;
+        }
+        if (bang <= colon) {
+            return fail(MalformedReason.INVALID_JAR);
+        }
+        // nested jar urls are not supported either. They are rejected before the archive url is scanned, so that it is
+        // scanned exactly once, and never recursively.
+        int archiveStart = colon + 1;
+        while (archiveStart < bang && buffer[archiveStart] <= ' ') {
+            archiveStart++;
+        }
+        if (archiveStart + 4 <= bang && regionMatchesIgnoreCase("jar:", archiveStart, archiveStart + 4)) {
+            return fail(MalformedReason.INVALID_JAR);
+        }
+        if (!scan(buffer, colon + 1, bang - colon - 1)) {
+            return fail(MalformedReason.INVALID_JAR);
+        }
+        // scanning the archive url replaced the offsets of this one
+        clear();
+        urlStart = start;
+        urlEnd = end;
+        schemeStart = start;
+        schemeEnd = colon;
+        int i = colon + 1;
+        pathStart = i;
+        while (i < refOrEnd && buffer[i] != '?') {
+            i++;
+        }
+        pathEnd = i;
+        if (i < refOrEnd) {
+            queryStart = i + 1;
+            queryEnd = refOrEnd;
+        }
+        if (refOrEnd < end) {
+            refStart = refOrEnd + 1;
+            refEnd = end;
+        }
+        return true;
+    }
+
+
+    /**
+     * Locate the host and port within the given authority range, which no longer includes user info.
+     * @return false if the host or port is invalid, in which case the {@link #failure()} is recorded
+     */
+    private boolean scanHostAndPort(int start, int end) {
+        int i = start;
+        hostStart = start;
+        if (i < end && buffer[i] == '[') {
+            // IPv6 literal
+            while (i < end && buffer[i] != ']') {
+                i++;
+            }
+            if (i == end || !isIPv6Literal(start + 1, i)) {
+                return fail(MalformedReason.INVALID_HOST);
+            }
+            i++;
+            if (i < end && buffer[i] != ':') {
+                return fail(MalformedReason.INVALID_HOST);
+            }
+        } else {
+            while (i < end && buffer[i] != ':') {
+                i++;
+            }
+        }
+        hostEnd = i;
+        if (i < end) {
+            // explicit port; an empty port is allowed, as it is by java.net.URL
+            i++;
+            if (end - i > 9) {
+                return fail(MalformedReason.INVALID_PORT);
+            }
+            for (int j = i; j < end; j++) {
+                if (!is(buffer[j], DIGIT)) {
+                    return fail(MalformedReason.INVALID_PORT);
+                }
+            }
+            portStart = i;
+            portEnd = end;
+        }
+        return true;
+    }
+
+
+    /**
+     * @return true if the given characters, which were enclosed in brackets, are an IPv6 address, optionally followed
+     * by a <code>%</code> and a non-empty scope id
+     */
+    private boolean isIPv6Literal(int start, int end) {
+        int addressEnd = start;
+        while (addressEnd < end && buffer[addressEnd] != '%') {
+            addressEnd++;
+        }
+        if (addressEnd == end - 1) {
+            return false;
+        }
+        return addressParser.parseIPv6Literal(buffer, start, addressEnd);
+    }
+
+
+    private boolean fail(MalformedReason reason) {
+        failure = reason;
+        return false;
+    }
+
+
+    private boolean isKnownScheme(int start, int end) {
+        for (String scheme : KNOWN_SCHEMES) {
+            if (regionMatchesIgnoreCase(scheme, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private boolean regionMatchesIgnoreCase(String lowerCase, int start, int end) {
+        if (end - start != lowerCase.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = buffer[i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCase.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private void clear() {
+        urlStart = urlEnd = 0;
+        schemeStart = schemeEnd = 0;
+        userInfoStart = userInfoEnd = 0;
+        hostStart = hostEnd = 0;
+        portStart = portEnd = 0;
+        pathStart = pathEnd = 0;
+        queryStart = queryEnd = 0;
+        refStart = refEnd = 0;
+        hasAuthority = false;
+        failure = MalformedReason.NONE;
+    }
+
+
+    /**
+     * @return why the most recently scanned characters are not a well-formed URL, or {@link MalformedReason#NONE} if
+     * they are
+     */
+    MalformedReason failure() {
+        return failure;
+    }
+
+
+    /**
+     * @return the buffer which was most recently scanned
+     */
+    char[] buffer() {
+        return buffer;
+    }
+
+
+    /**
+     * @param part a url part
+     * @return the offset of the first character of the given part in the scanned buffer
+     */
+    int start(URLPart part) {
+        switch (part) {
+            case PROTOCOL:
+                return schemeStart;
+            case HOST:
+                return hostStart;
+            case PORT:
+                return portStart;
+            case PATH:
+                return pathStart;
+            case REF:
+                return refStart;
+            case QUERY:
+                return queryStart;
+            case WHOLE:
+            default:
+                return urlStart;
+        }
+    }
+
+
+    /**
+     * @param part a url part
+     * @return the offset following the last character of the given part in the scanned buffer
+     */
+    int end(URLPart part) {
+        switch (part) {
+            case PROTOCOL:
+                return schemeEnd;
+            case HOST:
+                return hostEnd;
+            case PORT:
+                return portEnd;
+            case PATH:
+                return pathEnd;
+            case REF:
+                return refEnd;
+            case QUERY:
+                return queryEnd;
+            case WHOLE:
+            default:
+                return urlEnd;
+        }
+    }
+
+
+    /**
+     * @param part a url part
+     * @return true if the given part is present and non-empty
+     */
+    boolean has(URLPart part) {
+        return end(part) > start(part);
+    }
+
+
+    /**
+     * @return true if the url contains an authority (<code>//</code> following the scheme)
+     */
+    boolean hasAuthority() {
+        return hasAuthority;
+    }
+
+
+    int userInfoStart() {
+        return userInfoStart;
+    }
+
+
+    int userInfoEnd() {
+        return userInfoEnd;
+    }
+
+
+    /**
+     * @return the port implied by the scheme if no port was given explicitly, or null if it cannot be inferred
+     */
+    String defaultPort() {
+        if (regionMatchesIgnoreCase("http", schemeStart, schemeEnd)) {
+            return "80";
+        }
+        if (regionMatchesIgnoreCase("https", schemeStart, schemeEnd)) {
+            return "443";
+        }
+        return null;
+    }
+}
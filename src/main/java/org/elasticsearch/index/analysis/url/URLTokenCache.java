@@ -0,0 +1,478 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache of the tokens produced from recently seen URLs, shared by all URL tokenizers and token filters on a
+ * node. Entries are keyed by the URL and the options of the tokenizer or filter which produced them, and are bounded
+ * by their estimated size in bytes.
+ *
+ * Entries are admitted using W-TinyLFU: new entries enter a small LRU window, and an entry leaving the window only
+ * replaces an entry in the main space if it has been seen more often recently, according to a {@link FrequencySketch}.
+ * The main space is a segmented LRU which protects entries that have been hit since they were admitted. A few very
+ * common URLs therefore remain cached even when they are interspersed with a large number of URLs which are seen
+ * only once.
+ *
+ * The cache is split into independently locked segments. Lookups never block: the map of each segment is concurrent,
+ * and a hit only updates the eviction policy if the segment's lock can be taken immediately. Likewise, an insert is
+ * dropped rather than waiting for a busy segment.
+ */
+public final class URLTokenCache {
+    /**
+     * Share of the cache reserved for the admission window
+     */
+    private static final double WINDOW_RATIO = 0.01;
+
+    /**
+     * Share of the main space reserved for entries which have been hit since they were admitted
+     */
+    private static final double PROTECTED_RATIO = 0.8;
+
+    /**
+     * Rough size of an entry, used to size frequency sketches
+     */
+    private static final int EXPECTED_ENTRY_BYTES = 1024;
+
+    /**
+     * Maximum number of distinct tokenization options tracked at once. Once it is reached, all ids are released and
+     * options are assigned new ids as they are seen again.
+     */
+    static final int MAX_CONFIG_IDS = 1024;
+
+    private static final long NODE_BYTES = RamUsageEstimator.shallowSizeOfInstance(Node.class)
+            + RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    private final Segment[] segments;
+
+    private final ConcurrentHashMap<ConfigKey, Integer> configIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextConfigId = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * @param maxSizeInBytes the maximum estimated size of all cached entries
+     */
+    public URLTokenCache(long maxSizeInBytes) {
+        this(maxSizeInBytes, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+
+    /**
+     * @param maxSizeInBytes the maximum estimated size of all cached entries
+     * @param concurrencyLevel the desired number of independently locked segments; rounded up to a power of two
+     */
+    URLTokenCache(long maxSizeInBytes, int concurrencyLevel) {
+        if (maxSizeInBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSizeInBytes);
+        }
+        int segmentCount = 1;
+        while (segmentCount < Math.min(64, concurrencyLevel)) {
+            segmentCount <<= 1;
+        }
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSizeInBytes / segmentCount);
+        }
+    }
+
+
+    /**
+     * @param config a description of all tokenization options which affect the tokens produced from a URL
+     * @return a small integer identifying the given options within this cache. Ids are never reused, so entries cached
+     * under an id which has been released are simply no longer hit, and are eventually evicted.
+     */
+    int configId(String config) {
+        final byte[] bytes = config.getBytes(StandardCharsets.UTF_8);
+        final MurmurHash3.Hash128 hash = MurmurHash3.hash128(bytes, 0, bytes.length, 0, new MurmurHash3.Hash128());
+        final ConfigKey key = new ConfigKey(hash.h1, hash.h2);
+        final Integer id = configIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        if (configIds.size() >= MAX_CONFIG_IDS) {
+            configIds.clear();
+        }
+        return configIds.computeIfAbsent(key, k -> nextConfigId.getAndIncrement());
+    }
+
+
+    /**
+     * @return the number of distinct tokenization options currently tracked
+     */
+    int configCount() {
+        return configIds.size();
+    }
+
+
+    /**
+     * Look up the tokens previously produced from a URL
+     * @param key the URL and the options with which it is tokenized. May be a reusable probe key.
+     * @return the cached tokens, which must not be modified, or null if there are none
+     */
+    TokenBuffer get(Key key) {
+        final Node node = segment(key).get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return node.tokens;
+    }
+
+
+    /**
+     * Cache the tokens produced from a URL. Both the key and the tokens are copied.
+     * @param key the URL and the options with which it was tokenized. May be a reusable probe key.
+     * @param tokens the tokens produced from the URL
+     */
+    void put(Key key, TokenBuffer tokens) {
+        segment(key).put(key, tokens);
+    }
+
+
+    private Segment segment(Key key) {
+        final int hash = key.hash;
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+
+    public Stats stats() {
+        long count = 0;
+        long sizeInBytes = 0;
+        for (Segment segment : segments) {
+            count += segment.map.size();
+            sizeInBytes += segment.weight;
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), count, sizeInBytes);
+    }
+
+
+    /**
+     * 128 bit hash of the tokenization options, so that the map of ids does not retain the options themselves
+     */
+    private static final class ConfigKey {
+        private final long h1;
+        private final long h2;
+
+
+        ConfigKey(long h1, long h2) {
+            this.h1 = h1;
+            this.h2 = h2;
+        }
+
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(h1);
+        }
+
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ConfigKey)) {
+                return false;
+            }
+            final ConfigKey other = (ConfigKey) obj;
+            return h1 == other.h1 && h2 == other.h2;
+        }
+    }
+
+
+    /**
+     * Cache key: a URL along with the id of the options with which it is tokenized. A single instance may be reused to
+     * look up many URLs without allocating; the instances stored in the cache are immutable copies.
+     */
+    static final class Key {
+        private int configId;
+        private char[] chars;
+        private int length;
+        private int hash;
+
+
+        /**
+         * Point this key at the given URL
+         * @param configId id of the tokenization options, as returned by {@link URLTokenCache#configId(String)}
+         * @param chars buffer containing the URL. Not copied.
+         * @param length number of characters in the URL
+         * @return this key
+         */
+        Key set(int configId, char[] chars, int length) {
+            this.configId = configId;
+            this.chars = chars;
+            this.length = length;
+            int h = configId;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + chars[i];
+            }
+            this.hash = h;
+            return this;
+        }
+
+
+        private Key copy() {
+            return new Key().set(configId, Arrays.copyOf(chars, length), length);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            if (hash != other.hash || configId != other.configId || length != other.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chars[i] != other.chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    private static final class Node {
+        private static final byte WINDOW = 0;
+        private static final byte PROBATION = 1;
+        private static final byte PROTECTED = 2;
+        private static final byte REMOVED = 3;
+
+        private final Key key;
+        private final TokenBuffer tokens;
+        private final long weight;
+        private byte queue = WINDOW;
+        private Node prev;
+        private Node next;
+
+        private Node(Key key, TokenBuffer tokens) {
+            this.key = key;
+            this.tokens = tokens;
+            this.weight = NODE_BYTES + RamUsageEstimator.sizeOf(key.chars) + tokens.ramBytesUsed();
+        }
+    }
+
+
+    /**
+     * An intrusive doubly linked list of nodes, from least to most recently used
+     */
+    private static final class NodeQueue {
+        private Node head;
+        private Node tail;
+        private long weight;
+
+        private void add(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        private void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = node.next = null;
+            weight -= node.weight;
+        }
+
+        private void moveToTail(Node node) {
+            if (node != tail) {
+                remove(node);
+                add(node);
+            }
+        }
+    }
+
+
+    private final class Segment {
+        private final ConcurrentHashMap<Key, Node> map = new ConcurrentHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final FrequencySketch sketch;
+
+        private final NodeQueue window = new NodeQueue();
+        private final NodeQueue probation = new NodeQueue();
+        private final NodeQueue protectedQueue = new NodeQueue();
+
+        private final long maxWeight;
+        private final long maxWindowWeight;
+        private final long maxProtectedWeight;
+
+        /**
+         * Total weight of all entries. Written under {@link #lock}, read without it for stats.
+         */
+        private volatile long weight;
+
+        private Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+            this.maxWindowWeight = (long) (maxWeight * WINDOW_RATIO);
+            this.maxProtectedWeight = (long) ((maxWeight - maxWindowWeight) * PROTECTED_RATIO);
+            this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(16, maxWeight / EXPECTED_ENTRY_BYTES)));
+        }
+
+        private Node get(Key key) {
+            final Node node = map.get(key);
+            if (node != null && lock.tryLock()) {
+                try {
+                    sketch.increment(key.hash);
+                    onHit(node);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return node;
+        }
+
+        private void put(Key key, TokenBuffer tokens) {
+            if (!lock.tryLock()) {
+                // another thread is updating this segment; don't wait for it
+                return;
+            }
+            try {
+                sketch.increment(key.hash);
+                if (map.containsKey(key)) {
+                    return;
+                }
+                final Node node = new Node(key.copy(), tokens.copy());
+                if (node.weight > maxWeight - maxWindowWeight) {
+                    return;
+                }
+                map.put(node.key, node);
+                window.add(node);
+                weight += node.weight;
+                while (window.weight > maxWindowWeight) {
+                    final Node candidate = window.head;
+                    window.remove(candidate);
+                    admit(candidate);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onHit(Node node) {
+            switch (node.queue) {
+                case Node.WINDOW:
+                    window.moveToTail(node);
+                    break;
+                case Node.PROBATION:
+                    probation.remove(node);
+                    node.queue = Node.PROTECTED;
+                    protectedQueue.add(node);
+                    while (protectedQueue.weight > maxProtectedWeight) {
+                        final Node demoted = protectedQueue.head;
+                        protectedQueue.remove(demoted);
+                        demoted.queue = Node.PROBATION;
+                        probation.add(demoted);
+                    }
+                    break;
+                case Node.PROTECTED:
+                    protectedQueue.moveToTail(node);
+                    break;
+                default:
+                    // evicted since it was looked up
+            }
+        }
+
+        /**
+         * Move an entry which has left the window into the main space if it is seen more often than the entries it
+         * would displace. Otherwise, the entry is evicted.
+         */
+        private void admit(Node candidate) {
+            final long maxMainWeight = maxWeight - maxWindowWeight;
+            while (probation.weight + protectedQueue.weight + candidate.weight > maxMainWeight) {
+                final Node victim = probation.head != null ? probation.head : protectedQueue.head;
+                if (sketch.frequency(candidate.key.hash) <= sketch.frequency(victim.key.hash)) {
+                    evict(candidate, null);
+                    return;
+                }
+                evict(victim, victim.queue == Node.PROBATION ? probation : protectedQueue);
+            }
+            candidate.queue = Node.PROBATION;
+            probation.add(candidate);
+        }
+
+        private void evict(Node node, NodeQueue queue) {
+            if (queue != null) {
+                queue.remove(node);
+            }
+            node.queue = Node.REMOVED;
+            map.remove(node.key, node);
+            weight -= node.weight;
+            evictions.increment();
+        }
+    }
+
+
+    /**
+     * Point in time statistics of a {@link URLTokenCache}
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long count;
+        private final long sizeInBytes;
+
+        public Stats(long hits, long misses, long evictions, long count, long sizeInBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.count = count;
+            this.sizeInBytes = sizeInBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSizeInBytes() {
+            return sizeInBytes;
+        }
+    }
+}
@@ -0,0 +1,1259 @@
+package org.elasticsearch.index.analysis.url;
+
+import com.google.common.base.Strings;
+import org.apache.lucene.analysis.path.PathHierarchyTokenizer;
+import org.apache.lucene.analysis.path.ReversePathHierarchyTokenizer;
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.index.analysis.HashMode;
+import org.elasticsearch.index.analysis.IDNMode;
+import org.elasticsearch.index.analysis.OversizePolicy;
+import org.elasticsearch.index.analysis.PathMode;
+import org.elasticsearch.index.analysis.URLPart;
+import org.elasticsearch.index.analysis.URLPartComparator;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Extracts tokens from URLs according to a fixed set of options. This is the engine shared by {@link URLTokenizer}
+ * and {@link URLTokenFilter}: each of them configures a single instance for its lifetime and hands it the characters
+ * of every URL to be tokenized. The resulting tokens are placed in a reusable {@link TokenBuffer}.
+ *
+ * Instances are not thread safe.
+ */
+final class URLTokenExtractor {
+    private static final URLPartComparator PART_COMPARATOR = new URLPartComparator();
+
+    /**
+     * All parts in declaration order. {@link URLPart#values()} clones its array on every call.
+     */
+    private static final URLPart[] PARTS = URLPart.values();
+
+    private static final List<URLPart> ALL_PARTS;
+
+    /**
+     * Type of the token holding the registered domain of a host, such as <code>example.co.uk</code>
+     */
+    static final String REGISTERED_DOMAIN_TYPE = "registered_domain";
+
+    /**
+     * Type of the token holding the public suffix of a host, such as <code>co.uk</code>
+     */
+    static final String PUBLIC_SUFFIX_TYPE = "public_suffix";
+
+    /**
+     * Type of the tokens holding the network prefixes of an IP address host, such as <code>192.168.0.0/16</code>
+     */
+    static final String CIDR_TYPE = "cidr";
+
+    /**
+     * Type of the token holding a fixed width hash of a url, as selected by {@link #hashMode}
+     */
+    static final String HASH_TYPE = "hash";
+
+    static {
+        List<URLPart> allParts = Arrays.asList(PARTS.clone());
+        allParts.sort(PART_COMPARATOR);
+        ALL_PARTS = Collections.unmodifiableList(allParts);
+    }
+
+    /**
+     * If set, only the given part of the url will be tokenized.
+     */
+    private List<URLPart> parts;
+
+    /**
+     * If true, url parts will be url decoded prior to tokenization.
+     */
+    private boolean urlDecode;
+
+    /**
+     * If true, the url's host will be tokenized using a {@link ReversePathHierarchyTokenizer}
+     */
+    private boolean tokenizeHost = true;
+
+    /**
+     * If true, the url's host will be emitted as a single token with its labels in reverse order, such as
+     * <code>com.foo.www</code>, instead of as a hierarchy of domains
+     */
+    private boolean reverseHost;
+
+    /**
+     * The form to which internationalized hosts are converted before they are tokenized
+     */
+    private IDNMode idnMode = IDNMode.NONE;
+
+    /**
+     * Lengths of the network prefixes emitted for IPv4 address hosts, longest first
+     */
+    private int[] ipv4PrefixLengths = new int[0];
+
+    /**
+     * Lengths of the network prefixes emitted for IPv6 address hosts, longest first
+     */
+    private int[] ipv6PrefixLengths = new int[0];
+
+    /**
+     * If true, the url's path will be tokenized using a {@link PathHierarchyTokenizer}
+     */
+    private boolean tokenizePath = true;
+
+    /**
+     * How the url's path will be tokenized if {@link #tokenizePath} is true
+     */
+    private PathMode pathMode = PathMode.HIERARCHY;
+
+    /**
+     * Maximum number of segments in the path prefixes emitted if {@link #pathMode} is {@link PathMode#HYBRID}
+     */
+    private int pathDepth = 2;
+
+    /**
+     * If true, the hierarchy of domains emitted for the url's host is stacked at a single position, as is the
+     * hierarchy of prefixes emitted for its path
+     */
+    private boolean stackPositions;
+
+    /**
+     * If true, the url's query string will be split on each of the {@link #querySeparators}
+     */
+    private boolean tokenizeQuery = true;
+
+    /**
+     * Characters on which the query string will be split if {@link #tokenizeQuery} is true
+     */
+    private char[] querySeparators = {'&'};
+
+    /**
+     * If set and {@link #tokenizeQuery} is true, only query parameters whose names match are emitted
+     */
+    private QueryParameterMatcher queryParamsInclude;
+
+    /**
+     * If set and {@link #tokenizeQuery} is true, query parameters whose names match are not emitted
+     */
+    private QueryParameterMatcher queryParamsExclude;
+
+    /**
+     * If set and {@link #tokenizeHost} is true, the registered domain and public suffix of each host are emitted as
+     * distinctly typed tokens, and the domains above the registered domain are not emitted.
+     */
+    private PublicSuffixList publicSuffixList;
+
+    /**
+     * If true, malformed urls are accepted, and the given string will be returned as a single token. If false, they
+     * are rejected.
+     */
+    private boolean allowMalformed;
+
+    /**
+     * Has no effect if {@link #allowMalformed} is false. If both are true, an attempt will be made to tokenize malformed
+     * URLs using a {@link MalformedURLScanner}.
+     */
+    private boolean tokenizeMalformed;
+
+    /**
+     * If greater than zero, urls longer than this many characters are handled according to {@link #oversizePolicy}
+     */
+    private int maxUrlLength;
+
+    /**
+     * If greater than zero, tokens longer than this many characters are handled according to {@link #oversizePolicy}
+     */
+    private int maxTokenLength;
+
+    /**
+     * If greater than zero, urls which produce more than this many tokens are handled according to
+     * {@link #oversizePolicy}
+     */
+    private int maxTokensPerUrl;
+
+    private OversizePolicy oversizePolicy = OversizePolicy.TRUNCATE;
+
+    private final TokenHasher hasher = new TokenHasher();
+
+    /**
+     * If not {@link HashMode#NONE}, a token holding a fixed width hash of the selected characters of each well formed
+     * url is emitted
+     */
+    private HashMode hashMode = HashMode.NONE;
+
+    /**
+     * Number of bits in the hash emitted according to {@link #hashMode}: 64 or 128
+     */
+    private int hashBits = 64;
+
+    /**
+     * If true, the hash emitted according to {@link #hashMode} takes the place of the whole url token
+     */
+    private boolean hashOnly;
+
+    private final TokenHasher wideHasher = new TokenHasher(true);
+
+    /**
+     * Produces the canonical form of urls hashed in {@link HashMode#CANONICAL} mode; created when first needed
+     */
+    private URLCanonicalizer canonicalizer;
+
+
+    /**
+     * If set, tokens are looked up in and added to this node level cache
+     */
+    private URLTokenCache cache;
+
+    /**
+     * Id of the current options within {@link #cache}, or -1 if it has yet to be determined
+     */
+    private int configId = -1;
+
+    private final URLTokenCache.Key cacheKey = new URLTokenCache.Key();
+
+    /**
+     * If set, the analysis of each url is recorded in these metrics
+     */
+    private URLAnalysisMetrics metrics;
+
+    /**
+     * Scratch space used to count the tokens of each part when recording {@link #metrics}
+     */
+    private final int[] partCounts = new int[PARTS.length];
+
+    private final URLScanner scanner = new URLScanner();
+
+    private final MalformedURLScanner malformedScanner = new MalformedURLScanner();
+
+    /**
+     * False if the most recently tokenized url was rejected
+     */
+    private boolean accepted = true;
+
+    private final PercentDecoder decoder = new PercentDecoder();
+
+    private final IDNConverter idnConverter = new IDNConverter();
+
+    private final InetAddressParser addressParser = new InetAddressParser();
+
+    /**
+     * Tokens produced from the current input. Reused across inputs.
+     */
+    private final TokenBuffer tokens = new TokenBuffer();
+
+    /**
+     * Holds url decoded parts of the current input. Reused across inputs.
+     */
+    private char[] partBuffer = new char[256];
+
+    /**
+     * Offset within the raw part of each character of {@link #partBuffer}, followed by the length of the raw part.
+     * Reused across inputs.
+     */
+    private int[] partOffsets = new int[257];
+
+    /**
+     * {@link #partOffsets} while the part being tokenized is url decoded; null while it is tokenized straight from the
+     * input
+     */
+    private int[] sourceOffsets;
+
+    /**
+     * Offset within the raw host of the label holding each character of a host converted by {@link #idnConverter}.
+     * Reused across inputs.
+     */
+    private int[] hostOffsets = new int[64];
+
+
+    void setParts(List<URLPart> parts) {
+        if (parts != null) {
+            parts.sort(PART_COMPARATOR);
+            this.parts = parts;
+            optionsChanged();
+        }
+    }
+
+    void setPart(URLPart part) {
+        if (part != null) {
+            this.parts = Collections.singletonList(part);
+            optionsChanged();
+        }
+    }
+
+    void setUrlDecode(boolean urlDecode) {
+        this.urlDecode = urlDecode;
+        optionsChanged();
+    }
+
+    void setTokenizeHost(boolean tokenizeHost) {
+        this.tokenizeHost = tokenizeHost;
+        optionsChanged();
+    }
+
+    void setReverseHost(boolean reverseHost) {
+        this.reverseHost = reverseHost;
+        optionsChanged();
+    }
+
+    void setIdnMode(IDNMode idnMode) {
+        if (idnMode != null) {
+            this.idnMode = idnMode;
+            optionsChanged();
+        }
+    }
+
+    void setIpv4PrefixLengths(int[] ipv4PrefixLengths) {
+        this.ipv4PrefixLengths = sortDescending(ipv4PrefixLengths);
+        optionsChanged();
+    }
+
+    void setIpv6PrefixLengths(int[] ipv6PrefixLengths) {
+        this.ipv6PrefixLengths = sortDescending(ipv6PrefixLengths);
+        optionsChanged();
+    }
+
+    private static int[] sortDescending(int[] values) {
+        if (values == null) {
+            return new int[0];
+        }
+        final int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length / 2; i++) {
+            final int value = sorted[i];
+            sorted[i] = sorted[sorted.length - 1 - i];
+            sorted[sorted.length - 1 - i] = value;
+        }
+        return sorted;
+    }
+
+    void setTokenizePath(boolean tokenizePath) {
+        this.tokenizePath = tokenizePath;
+        optionsChanged();
+    }
+
+    void setPathMode(PathMode pathMode) {
+        if (pathMode != null) {
+            this.pathMode = pathMode;
+            optionsChanged();
+        }
+    }
+
+    void setPathDepth(int pathDepth) {
+        this.pathDepth = pathDepth;
+        optionsChanged();
+    }
+
+    void setStackPositions(boolean stackPositions) {
+        this.stackPositions = stackPositions;
+        optionsChanged();
+    }
+
+    void setTokenizeQuery(boolean tokenizeQuery) {
+        this.tokenizeQuery = tokenizeQuery;
+        optionsChanged();
+    }
+
+    void setQuerySeparators(String querySeparators) {
+        if (!Strings.isNullOrEmpty(querySeparators)) {
+            this.querySeparators = querySeparators.toCharArray();
+            optionsChanged();
+        }
+    }
+
+    void setQueryParamsInclude(QueryParameterMatcher queryParamsInclude) {
+        this.queryParamsInclude = queryParamsInclude;
+        optionsChanged();
+    }
+
+    void setQueryParamsExclude(QueryParameterMatcher queryParamsExclude) {
+        this.queryParamsExclude = queryParamsExclude;
+        optionsChanged();
+    }
+
+    void setPublicSuffixList(PublicSuffixList publicSuffixList) {
+        this.publicSuffixList = publicSuffixList;
+        optionsChanged();
+    }
+
+    void setAllowMalformed(boolean allowMalformed) {
+        this.allowMalformed = allowMalformed;
+        optionsChanged();
+    }
+
+    void setTokenizeMalformed(boolean tokenizeMalformed) {
+        this.tokenizeMalformed = tokenizeMalformed;
+        optionsChanged();
+    }
+
+    void setMaxUrlLength(int maxUrlLength) {
+        this.maxUrlLength = maxUrlLength;
+        optionsChanged();
+    }
+
+    void setMaxTokenLength(int maxTokenLength) {
+        this.maxTokenLength = maxTokenLength;
+        optionsChanged();
+    }
+
+    void setMaxTokensPerUrl(int maxTokensPerUrl) {
+        this.maxTokensPerUrl = maxTokensPerUrl;
+        optionsChanged();
+    }
+
+    void setOversizePolicy(OversizePolicy oversizePolicy) {
+        if (oversizePolicy != null) {
+            this.oversizePolicy = oversizePolicy;
+            optionsChanged();
+        }
+    }
+
+    void setHashMode(HashMode hashMode) {
+        if (hashMode != null) {
+            this.hashMode = hashMode;
+            if (hashMode == HashMode.CANONICAL && canonicalizer == null) {
+                canonicalizer = new URLCanonicalizer();
+            }
+            optionsChanged();
+        }
+    }
+
+    void setHashBits(int hashBits) {
+        if (hashBits != 64 && hashBits != 128) {
+            throw new IllegalArgumentException("Hashes must have 64 or 128 bits: " + hashBits);
+        }
+        this.hashBits = hashBits;
+        optionsChanged();
+    }
+
+    void setHashOnly(boolean hashOnly) {
+        this.hashOnly = hashOnly;
+        optionsChanged();
+    }
+
+    void setCache(URLTokenCache cache) {
+        this.cache = cache;
+        optionsChanged();
+    }
+
+
+    void setMetrics(URLAnalysisMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    private void optionsChanged() {
+        configId = -1;
+    }
+
+
+    /**
+     * @return a description of all options which affect the tokens produced from a url
+     */
+    private String options() {
+        return "parts=" + parts +
+                ",url_decode=" + urlDecode +
+                ",tokenize_host=" + tokenizeHost +
+                ",reverse_host=" + reverseHost +
+                ",idn_mode=" + idnMode +
+                ",ipv4_prefix_lengths=" + Arrays.toString(ipv4PrefixLengths) +
+                ",ipv6_prefix_lengths=" + Arrays.toString(ipv6PrefixLengths) +
+                ",tokenize_path=" + tokenizePath +
+                ",path_mode=" + pathMode +
+                ",path_depth=" + pathDepth +
+                ",stack_positions=" + stackPositions +
+                ",tokenize_query=" + tokenizeQuery +
+                ",query_separators=" + new String(querySeparators) +
+                ",query_params_include=" + queryParamsInclude +
+                ",query_params_exclude=" + queryParamsExclude +
+                ",public_suffix_list=" + (publicSuffixList == null ? null : publicSuffixList.name()) +
+                ",allow_malformed=" + allowMalformed +
+                ",tokenize_malformed=" + tokenizeMalformed +
+                ",max_url_length=" + maxUrlLength +
+                ",max_token_length=" + maxTokenLength +
+                ",max_tokens_per_url=" + maxTokensPerUrl +
+                ",oversize_policy=" + oversizePolicy +
+                ",hash_mode=" + hashMode +
+                ",hash_bits=" + hashBits +
+                ",hash_only=" + hashOnly;
+    }
+
+
+    /**
+     * @return the maximum length of a url, or zero if there is none
+     */
+    int maxUrlLength() {
+        return maxUrlLength;
+    }
+
+
+    OversizePolicy oversizePolicy() {
+        return oversizePolicy;
+    }
+
+
+    /**
+     * @return the tokens extracted from the most recent input
+     */
+    TokenBuffer tokens() {
+        return tokens;
+    }
+
+
+    /**
+     * Tokenize the given url according to the options which have been set. The resulting tokens are placed in
+     * {@link #tokens()}, replacing those of the previous input.
+     * @param buffer buffer containing the url
+     * @param length number of characters in the url
+     * @return true if the url was accepted, or false if it was rejected because it is malformed and
+     * {@link #allowMalformed} is false. A rejected url produces no tokens; its {@link ParseResult} and
+     * {@link MalformedReason} are recorded in {@link #tokens()}.
+     * @throws IOException if a dictionary or list cannot be read
+     */
+    boolean tokenize(char[] buffer, int length) throws IOException {
+        if (metrics == null) {
+            tokenizeCached(buffer, length);
+            return accepted;
+        }
+        final long start = System.nanoTime();
+        final boolean cacheHit = tokenizeCached(buffer, length);
+        metrics.record(tokens, !accepted, partCounts, cacheHit, System.nanoTime() - start);
+        return accepted;
+    }
+
+
+    /**
+     * Tokenize the given url, looking its tokens up in and adding them to the {@link #cache} if one is set. Rejected
+     * urls are not cached.
+     * @return true if the tokens were found in the cache
+     */
+    private boolean tokenizeCached(char[] buffer, int length) throws IOException {
+        accepted = true;
+        if (maxUrlLength > 0 && length > maxUrlLength) {
+            switch (oversizePolicy) {
+                case HASH:
+                    emitHash(hasher.reset().update(buffer, 0, length).hash(), length);
+                    return false;
+                case SKIP:
+                    tokens.reset(false);
+                    return false;
+                case TRUNCATE:
+                default:
+                    length = truncatedLength(buffer, 0, maxUrlLength);
+            }
+        }
+        if (cache == null) {
+            extract(buffer, length);
+            return false;
+        }
+        if (configId == -1) {
+            configId = cache.configId(options());
+        }
+        final TokenBuffer cached = cache.get(cacheKey.set(configId, buffer, length));
+        if (cached != null) {
+            tokens.copyFrom(cached);
+            return true;
+        }
+        extract(buffer, length);
+        if (accepted) {
+            cache.put(cacheKey, tokens);
+        }
+        return false;
+    }
+
+
+    /**
+     * Replace the tokens of the previous input with a single token holding the hash of an oversized url, which the
+     * caller has hashed without holding it in memory
+     * @param hash hash of the url, as computed by a {@link TokenHasher}
+     * @param length number of characters in the url
+     */
+    void tokenizeHash(long hash, int length) {
+        final long start = System.nanoTime();
+        emitHash(hash, length);
+        if (metrics != null) {
+            metrics.record(tokens, false, partCounts, false, System.nanoTime() - start);
+        }
+    }
+
+
+    private void emitHash(long hash, int length) {
+        tokens.reset(false);
+        tokens.begin();
+        TokenHasher.appendHex(hash, tokens);
+        tokens.commit(URLPart.WHOLE, null, URLPartAttribute.SYNTHETIC, 0, length);
+    }
+
+
+    /**
+     * @return the given length, less one if it would split a surrogate pair
+     */
+    private static int truncatedLength(char[] buffer, int start, int length) {
+        return Character.isHighSurrogate(buffer[start + length - 1]) ? length - 1 : length;
+    }
+
+
+    private void extract(char[] buffer, int length) throws IOException {
+        accepted = extractTokens(buffer, length);
+        applyLimits();
+    }
+
+
+    /**
+     * Apply {@link #maxTokenLength} and {@link #maxTokensPerUrl} to the extracted tokens
+     */
+    private void applyLimits() {
+        if (maxTokenLength > 0) {
+            for (int i = 0; i < tokens.size(); i++) {
+                final int length = tokens.termLength(i);
+                if (length <= maxTokenLength) {
+                    continue;
+                }
+                switch (oversizePolicy) {
+                    case HASH:
+                        final long hash = hasher.reset().update(tokens.chars(), tokens.termStart(i), length).hash();
+                        tokens.begin();
+                        TokenHasher.appendHex(hash, tokens);
+                        tokens.replaceTerm(i, URLPartAttribute.SYNTHETIC);
+                        break;
+                    case SKIP:
+                        tokens.remove(i--);
+                        break;
+                    case TRUNCATE:
+                    default:
+                        tokens.truncateTerm(i, truncatedLength(tokens.chars(), tokens.termStart(i), maxTokenLength));
+                }
+            }
+        }
+        if (maxTokensPerUrl > 0 && tokens.size() > maxTokensPerUrl) {
+            tokens.truncate(oversizePolicy == OversizePolicy.SKIP ? 0 : maxTokensPerUrl);
+        }
+    }
+
+
+    /**
+     * Extract the tokens of the given url, classifying it by how well it parses
+     * @return false if the url was rejected
+     */
+    private boolean extractTokens(char[] buffer, int length) throws IOException {
+        final boolean allParts = parts == null || parts.isEmpty();
+        // when tokenizing all parts, identical tokens may be produced from different parts
+        tokens.reset(allParts);
+        if (scanner.scan(buffer, 0, length)) {
+            if (!allParts) {
+                for (URLPart part : parts) {
+                    tokenize(scanner, part);
+                }
+            } else {
+                // No part is specified. Tokenize all parts.
+                for (URLPart urlPart : PARTS) {
+                    tokenize(scanner, urlPart);
+                }
+                tokenizeSpecial(scanner);
+            }
+            if (hashMode != HashMode.NONE) {
+                getHashToken(scanner);
+            }
+            if (tokens.decodeFailures() == 0) {
+                return true;
+            }
+            tokens.setParseResult(ParseResult.RECOVERABLE, MalformedReason.INVALID_ESCAPE);
+            return allowMalformed || reject();
+        }
+        malformedScanner.scan(buffer, 0, length);
+        final ParseResult result = malformedScanner.result();
+        tokens.setParseResult(result, scanner.failure());
+        if (!allowMalformed) {
+            return reject();
+        }
+        tokens.setMalformed();
+        if (result == ParseResult.GARBAGE) {
+            // nothing resembling a url was found, so there are no parts to recover: the input is passed through as is
+            if (length > 0) {
+                tokenizeMalformedWhole(buffer, length);
+            }
+        } else if (tokenizeMalformed || allParts) {
+            tokenizePartsMalformed(malformedScanner, allParts ? ALL_PARTS : parts);
+        } else if (length > 0) {
+            tokenizeMalformedWhole(buffer, length);
+        }
+        return true;
+    }
+
+
+    /**
+     * Discard the tokens extracted from a url which has been rejected, keeping its classification
+     * @return false
+     */
+    private boolean reject() {
+        tokens.truncate(0);
+        return false;
+    }
+
+
+    /**
+     * Tokenize all given parts of the given URL while ensuring that duplicate tokens are not created when the whole
+     * malformed URL is is identical to a single part token.
+     * @param url scanner holding the offsets of each part of the malformed URL
+     * @param parts the desired {@link URLPart}s in proper part order
+     * @throws IOException
+     */
+    private void tokenizePartsMalformed(MalformedURLScanner url, List<URLPart> parts) throws IOException {
+        final int tokenCount = tokens.size();
+        for (URLPart part : parts) {
+            if (part != URLPart.WHOLE || tokens.size() == tokenCount) {
+                // If we couldn't tokenize any of the parts, add the whole thing.
+                tokenizeMalformed(url, part);
+            }
+        }
+    }
+
+
+    /**
+     * Attempt to tokenize the given malformed URL.
+     * @param url scanner holding the offsets of each part of the malformed URL
+     * @param part the desired part of the URL
+     * @throws IOException
+     */
+    private void tokenizeMalformed(MalformedURLScanner url, URLPart part) throws IOException {
+        if (part == URLPart.PORT) {
+            getPortTokens(url);
+            return;
+        }
+        if (!url.has(part)) {
+            // desired part was not found
+            return;
+        }
+        final char[] buffer = url.buffer();
+        final int start = url.start(part);
+        final int end = url.end(part);
+        switch (part) {
+            case HOST:
+            case PATH:
+            case QUERY:
+                tokenizePart(part, buffer, start, end);
+                break;
+            case REF:
+                getRefTokens(buffer, start, end);
+                break;
+            case PROTOCOL:
+                tokens.add(part, buffer, start, end - start, start, end);
+                break;
+            case WHOLE:
+                tokenizeMalformedWhole(buffer, end);
+                break;
+            default:
+        }
+    }
+
+
+    /**
+     * Emit the given malformed URL as a single token
+     * @param buffer buffer containing the url
+     * @param length number of characters in the url
+     */
+    private void tokenizeMalformedWhole(char[] buffer, int length) {
+        tokens.add(URLPart.WHOLE, buffer, 0, length, 0, length);
+    }
+
+
+    /**
+     * Emit a {@link #HASH_TYPE} token holding the hash of the characters of the url selected by {@link #hashMode}, as
+     * {@link #hashBits} bits written in hex. The characters are hashed straight from the buffer holding the url, or
+     * from the output of the {@link #canonicalizer}.
+     * @param url scanner holding the offsets of each part of the url
+     */
+    private void getHashToken(URLScanner url) {
+        final TokenHasher urlHasher = hashBits == 128 ? wideHasher : hasher;
+        urlHasher.reset();
+        final char[] buffer = url.buffer();
+        int start = url.start(URLPart.WHOLE);
+        int end = url.end(URLPart.WHOLE);
+        switch (hashMode) {
+            case HOST_PATH:
+                // a path always begins with a slash when there is a host, so the two cannot run together
+                final int pathStart = url.start(URLPart.PATH);
+                if (url.has(URLPart.HOST)) {
+                    start = url.start(URLPart.HOST);
+                    urlHasher.update(buffer, start, url.end(URLPart.HOST) - start);
+                } else {
+                    start = pathStart;
+                }
+                end = url.end(URLPart.PATH);
+                urlHasher.update(buffer, pathStart, end - pathStart);
+                break;
+            case CANONICAL:
+                canonicalizer.canonicalize(buffer, end);
+                urlHasher.update(canonicalizer.output(), 0, canonicalizer.length());
+                break;
+            case WHOLE:
+            default:
+                urlHasher.update(buffer, start, end - start);
+        }
+        tokens.begin();
+        TokenHasher.appendHex(urlHasher.hash(), tokens);
+        if (hashBits == 128) {
+            TokenHasher.appendHex(urlHasher.wideHash(), tokens);
+        }
+        tokens.commit(URLPart.WHOLE, HASH_TYPE, URLPartAttribute.SYNTHETIC, start, end);
+    }
+
+
+    /**
+     * Copy the given part of a url into the reusable {@link #partBuffer} and URL decode it there. The offset of each
+     * decoded character within the raw part is recorded in {@link #partOffsets}.
+     * @param buffer buffer containing the url
+     * @param start start offset of the part
+     * @param end end offset of the part
+     * @return the number of characters in the decoded part
+     */
+    private int urlDecode(char[] buffer, int start, int end) {
+        final int length = end - start;
+        if (partBuffer.length < length) {
+            partBuffer = ArrayUtil.grow(partBuffer, length);
+        }
+        if (partOffsets.length < length + 1) {
+            partOffsets = ArrayUtil.grow(partOffsets, length + 1);
+        }
+        System.arraycopy(buffer, start, partBuffer, 0, length);
+        final int decodedLength = decoder.decode(partBuffer, 0, length, partOffsets);
+        if (decoder.invalidEscapes() > 0) {
+            tokens.addDecodeFailure();
+        }
+        return decodedLength;
+    }
+
+
+    /**
+     * Tokenize the url most recently scanned by the given {@link URLScanner} based on the desired {@link URLPart} and
+     * currently set tokenizer options.
+     * @param url scanner holding the offsets of each part of the url
+     * @param part the desired part of the url
+     * @throws IOException
+     */
+    private void tokenize(URLScanner url, URLPart part) throws IOException {
+        if (part == URLPart.WHOLE && hashOnly && hashMode != HashMode.NONE) {
+            // the whole url is represented by its hash
+            return;
+        }
+        if (part == URLPart.PORT) {
+            getPortTokens(url);
+            return;
+        }
+        if (!url.has(part)) {
+            // desired part was not found
+            return;
+        }
+        final char[] buffer = url.buffer();
+        final int start = url.start(part);
+        final int end = url.end(part);
+        if (part == URLPart.PROTOCOL) {
+            // protocols are case insensitive, and are always lower cased by java.net.URL
+            tokens.begin();
+            for (int i = start; i < end; i++) {
+                tokens.append(Character.toLowerCase(buffer[i]));
+            }
+            tokens.commit(part, start, end);
+            return;
+        }
+        tokenizePart(part, buffer, start, end);
+    }
+
+
+    /**
+     * Tokenize a single part of a url, url decoding it first if {@link #urlDecode} is true
+     * @param part the part of the url
+     * @param buffer buffer containing the url
+     * @param start start offset of the part
+     * @param end end offset of the part
+     * @throws IOException
+     */
+    private void tokenizePart(URLPart part, char[] buffer, int start, int end) throws IOException {
+        if (!urlDecode || !PercentDecoder.needsDecoding(buffer, start, end)) {
+            // the part can be tokenized straight from the input
+            tokenizePart(part, buffer, start, end, start, end);
+            return;
+        }
+        final int length = urlDecode(buffer, start, end);
+        sourceOffsets = partOffsets;
+        tokens.setFlags(URLPartAttribute.DECODED);
+        tokenizePart(part, partBuffer, 0, length, start, end);
+        tokens.setFlags(0);
+        sourceOffsets = null;
+    }
+
+
+    /**
+     * @param start start offset of the raw part in the input
+     * @param from offset of the part in the buffer from which it is being tokenized
+     * @param i an offset in the buffer from which the part is being tokenized
+     * @return the offset in the input corresponding to <code>i</code>
+     */
+    private int sourceOffset(int start, int from, int i) {
+        return sourceOffsets == null ? start + i - from : start + sourceOffsets[i - from];
+    }
+
+
+    /**
+     * Tokenize a single part of a url. If {@link #stackPositions} is true, the tokens of a host, and the tokens of a
+     * path unless its segments are emitted, are stacked at the position of the first of them.
+     * @param part the part of the url
+     * @param src buffer containing the (potentially url decoded) part
+     * @param from offset of the part in <code>src</code>
+     * @param to end of the part in <code>src</code>
+     * @param start start offset of the raw part in the input
+     * @param end end offset of the raw part in the input
+     */
+    private void tokenizePart(URLPart part, char[] src, int from, int to, int start, int end) {
+        switch (part) {
+            case HOST:
+                tokens.setStacked(stackPositions);
+                getNormalizedHostTokens(src, from, to, start, end);
+                tokens.setStacked(false);
+                break;
+            case PATH:
+                tokens.setStacked(stackPositions && pathMode != PathMode.SEGMENTS);
+                getPathTokens(src, from, to, start, end);
+                tokens.setStacked(false);
+                break;
+            case QUERY:
+                getQueryTokens(src, from, to, start, end);
+                break;
+            default:
+                tokens.add(part, src, from, to - from, start, end);
+        }
+    }
+
+
+    /**
+     * Retrieve tokens representing the host of the given URL, once it has been converted according to
+     * {@link #idnMode}. Hosts which are already in the desired form, such as ASCII hosts when converting to ASCII, are
+     * tokenized as they are. The tokens of a converted host take the offsets of the raw labels from which they begin.
+     * @param src buffer containing the (potentially url decoded) host
+     * @param from offset of the host in <code>src</code>
+     * @param to end of the host in <code>src</code>
+     * @param start start offset of the raw host in the input
+     * @param end end offset of the raw host in the input
+     */
+    private void getNormalizedHostTokens(char[] src, int from, int to, int start, int end) {
+        final int length = idnConverter.convert(idnMode, src, from, to);
+        if (length == -1) {
+            getHostTokens(src, from, to, start, end);
+            return;
+        }
+        final char[] host = idnConverter.output();
+        if (hostOffsets.length < length) {
+            hostOffsets = ArrayUtil.grow(hostOffsets, length);
+        }
+        // conversion preserves labels, so each converted label maps to the raw label at the same index
+        int labelStart = from;
+        int labelOffset = 0;
+        for (int i = 0; i < length; i++) {
+            if (i == 0 || host[i - 1] == '.') {
+                labelOffset = sourceOffset(start, from, labelStart) - start;
+                while (labelStart < to && !IDNConverter.isLabelSeparator(src[labelStart])) {
+                    labelStart++;
+                }
+                labelStart = Math.min(labelStart + 1, to);
+            }
+            hostOffsets[i] = labelOffset;
+        }
+        final int[] offsets = sourceOffsets;
+        sourceOffsets = hostOffsets;
+        getHostTokens(host, 0, length, start, end);
+        sourceOffsets = offsets;
+    }
+
+
+    /**
+     * Retrieve tokens representing the host of the given URL. Unless the host is an IP address or
+     * {@link #tokenizeHost} is false, the host will be emitted along with each of its parent domains, as the
+     * {@link ReversePathHierarchyTokenizer} would: <code>www.foo.com</code>, <code>foo.com</code>, <code>com</code>.
+     *
+     * If a {@link #publicSuffixList} is set and the host is under a public suffix, parent domains are only emitted
+     * down to the registered domain, which is emitted as a {@link #REGISTERED_DOMAIN_TYPE} token, and the public suffix
+     * is emitted as a {@link #PUBLIC_SUFFIX_TYPE} token: <code>www.foo.co.uk</code>, <code>foo.co.uk</code>,
+     * <code>co.uk</code>.
+     *
+     * If {@link #reverseHost} is true, a host other than an IP address is instead emitted as a single token with its
+     * labels reversed, whether or not {@link #tokenizeHost} is true: <code>com.foo.www</code>.
+     *
+     * An IP address host is emitted as a single token, followed by a {@link #CIDR_TYPE} token for each of its network
+     * prefixes of the lengths in {@link #ipv4PrefixLengths} or {@link #ipv6PrefixLengths}: <code>192.168.1.20</code>,
+     * <code>192.168.1.0/24</code>, <code>192.168.0.0/16</code>.
+     * @param src buffer containing the (potentially url decoded) host
+     * @param from offset of the host in <code>src</code>
+     * @param to end of the host in <code>src</code>
+     * @param start start offset of the raw host in the input
+     * @param end end offset of the raw host in the input
+     */
+    private void getHostTokens(char[] src, int from, int to, int start, int end) {
+        final boolean prefixes = ipv4PrefixLengths.length > 0 || ipv6PrefixLengths.length > 0;
+        final int addressLength = tokenizeHost || reverseHost || prefixes ? addressParser.parse(src, from, to) : 0;
+        if (addressLength != 0) {
+            tokens.add(URLPart.HOST, src, from, to - from, start, end);
+            for (int prefixLength : addressLength == InetAddressParser.IPV4_LENGTH ? ipv4PrefixLengths
+                    : ipv6PrefixLengths) {
+                tokens.begin()
+                        .append(addressParser.output(), 0, addressParser.formatPrefix(prefixLength))
+                        .commit(URLPart.HOST, CIDR_TYPE, start, end);
+            }
+            return;
+        }
+        if (!tokenizeHost && !reverseHost) {
+            tokens.add(URLPart.HOST, src, from, to - from, start, end);
+            return;
+        }
+        if (reverseHost) {
+            getReversedHostToken(src, from, to, start, end);
+            return;
+        }
+        final int suffixStart = publicSuffixList == null ? -1 : publicSuffixList.publicSuffixStart(src, from, to);
+        if (suffixStart == -1) {
+            tokens.add(URLPart.HOST, src, from, to - from, start, end);
+            for (int i = from; i < to - 1; i++) {
+                if (src[i] == '.') {
+                    tokens.add(URLPart.HOST, src, i + 1, to - i - 1, sourceOffset(start, from, i + 1), end);
+                }
+            }
+            return;
+        }
+        final int registeredStart = PublicSuffixList.registeredDomainStart(src, from, suffixStart);
+        if (registeredStart != -1) {
+            if (registeredStart > from) {
+                tokens.add(URLPart.HOST, src, from, to - from, start, end);
+            }
+            for (int i = from; i < registeredStart - 1; i++) {
+                if (src[i] == '.') {
+                    tokens.add(URLPart.HOST, src, i + 1, to - i - 1, sourceOffset(start, from, i + 1), end);
+                }
+            }
+            tokens.begin()
+                    .append(src, registeredStart, to - registeredStart)
+                    .commit(URLPart.HOST, REGISTERED_DOMAIN_TYPE, sourceOffset(start, from, registeredStart), end);
+        }
+        tokens.begin()
+                .append(src, suffixStart, to - suffixStart)
+                .commit(URLPart.HOST, PUBLIC_SUFFIX_TYPE, sourceOffset(start, from, suffixStart), end);
+    }
+
+
+    /**
+     * Emit the given host as a single token with its labels in reverse order
+     * @param src buffer containing the (potentially url decoded) host
+     * @param from offset of the host in <code>src</code>
+     * @param to end of the host in <code>src</code>
+     * @param start start offset of the raw host in the input
+     * @param end end offset of the raw host in the input
+     */
+    private void getReversedHostToken(char[] src, int from, int to, int start, int end) {
+        tokens.begin();
+        int labelEnd = to;
+        for (int i = to - 1; i >= from - 1; i--) {
+            if (i < from || src[i] == '.') {
+                tokens.append(src, i + 1, labelEnd - i - 1);
+                if (i >= from) {
+                    tokens.append('.');
+                }
+                labelEnd = i;
+            }
+        }
+        tokens.commit(URLPart.HOST, start, end);
+    }
+
+
+    /**
+     * Retrieve the port token of the given URL. If the port was not given explicitly, it is inferred from the protocol
+     * and the token has no offsets.
+     * @param url scanner holding the offsets of each part of the url
+     */
+    private void getPortTokens(URLScanner url) {
+        if (url.has(URLPart.PORT)) {
+            int start = url.start(URLPart.PORT);
+            int end = url.end(URLPart.PORT);
+            tokens.add(URLPart.PORT, url.buffer(), start, end - start, start, end);
+            return;
+        }
+        String port = url.defaultPort();
+        if (port != null) {
+            tokens.begin().append(port).commit(URLPart.PORT, null, URLPartAttribute.SYNTHETIC, 0, 0);
+        }
+    }
+
+
+    /**
+     * Retrieve the port token of the given malformed URL. If the port was not given explicitly, it is inferred from
+     * the protocol and the token has no offsets.
+     * @param url scanner holding the offsets of each part of the malformed url
+     */
+    private void getPortTokens(MalformedURLScanner url) {
+        if (url.has(URLPart.PORT)) {
+            int start = url.start(URLPart.PORT);
+            int end = url.end(URLPart.PORT);
+            tokens.add(URLPart.PORT, url.buffer(), start, end - start, start, end);
+            return;
+        }
+        String port = url.defaultPort();
+        if (port != null) {
+            tokens.begin().append(port).commit(URLPart.PORT, null, URLPartAttribute.SYNTHETIC, 0, 0);
+        }
+    }
+
+
+    /**
+     * Retrieve tokens representing the path of the given URL. Unless {@link #tokenizePath} is false, each prefix of
+     * the path ending before a <code>/</code> will be emitted, followed by the whole path, as the
+     * {@link PathHierarchyTokenizer} would: <code>/foo</code>, <code>/foo/bar</code>, <code>/foo/bar/baz.html</code>.
+     *
+     * If {@link #pathMode} is {@link PathMode#HYBRID}, only prefixes of up to {@link #pathDepth} segments are emitted
+     * before the whole path. If it is {@link PathMode#SEGMENTS}, each non-empty segment is instead emitted on its own:
+     * <code>foo</code>, <code>bar</code>, <code>baz.html</code>.
+     * @param src buffer containing the (potentially url decoded) path
+     * @param from offset of the path in <code>src</code>
+     * @param to end of the path in <code>src</code>
+     * @param start start offset of the raw path in the input
+     * @param end end offset of the raw path in the input
+     */
+    private void getPathTokens(char[] src, int from, int to, int start, int end) {
+        if (!tokenizePath) {
+            tokens.add(URLPart.PATH, src, from, to - from, start, end);
+            return;
+        }
+        if (pathMode == PathMode.SEGMENTS) {
+            getPathSegmentTokens(src, from, to, start);
+            return;
+        }
+        int depth = 0;
+        for (int i = from + 1; i < to; i++) {
+            if (src[i] == '/') {
+                if (pathMode == PathMode.HYBRID && depth == pathDepth) {
+                    break;
+                }
+                tokens.add(URLPart.PATH, src, from, i - from, start, sourceOffset(start, from, i));
+                depth++;
+            }
+        }
+        tokens.add(URLPart.PATH, src, from, to - from, start, end);
+    }
+
+
+    /**
+     * Emit each non-empty segment of the given path as a token
+     * @param src buffer containing the (potentially url decoded) path
+     * @param from offset of the path in <code>src</code>
+     * @param to end of the path in <code>src</code>
+     * @param start start offset of the raw path in the input
+     */
+    private void getPathSegmentTokens(char[] src, int from, int to, int start) {
+        int segmentStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || src[i] == '/') {
+                if (i > segmentStart) {
+                    tokens.add(URLPart.PATH, src, segmentStart, i - segmentStart,
+                            sourceOffset(start, from, segmentStart), sourceOffset(start, from, i));
+                }
+                segmentStart = i + 1;
+            }
+        }
+    }
+
+
+    /**
+     * Retrieve the ref token of a malformed url
+     * @param buffer buffer containing the url
+     * @param start start offset of the ref
+     * @param end end offset of the ref
+     * @throws IOException
+     */
+    private void getRefTokens(char[] buffer, int start, int end) throws IOException {
+        if (!urlDecode || !PercentDecoder.needsDecoding(buffer, start, end)) {
+            tokens.add(URLPart.REF, buffer, start, end - start, start, end);
+            return;
+        }
+        final int length = urlDecode(buffer, start, end);
+        tokens.begin().append(partBuffer, 0, length).commit(URLPart.REF, null, URLPartAttribute.DECODED, start, end);
+    }
+
+
+    /**
+     * Retrieve tokens representing the query string of the given URL. Unless {@link #tokenizeQuery} is false, the
+     * query string will be split on each of the {@link #querySeparators}. Empty parameters, and parameters rejected by
+     * {@link #queryParamsInclude} or {@link #queryParamsExclude}, are not emitted.
+     * @param src buffer containing the (potentially url decoded) query string
+     * @param from offset of the query string in <code>src</code>
+     * @param to end of the query string in <code>src</code>
+     * @param start start offset of the raw query string in the input
+     * @param end end offset of the raw query string in the input
+     */
+    private void getQueryTokens(char[] src, int from, int to, int start, int end) {
+        if (!tokenizeQuery) {
+            tokens.add(URLPart.QUERY, src, from, to - from, start, end);
+            return;
+        }
+        int paramStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || isQuerySeparator(src[i])) {
+                if (i > paramStart && acceptQueryParam(src, paramStart, i)) {
+                    tokens.add(URLPart.QUERY, src, paramStart, i - paramStart, sourceOffset(start, from, paramStart),
+                            sourceOffset(start, from, i));
+                }
+                paramStart = i + 1;
+            }
+        }
+    }
+
+
+    private boolean acceptQueryParam(char[] src, int from, int to) {
+        if (queryParamsInclude != null && !queryParamsInclude.matches(src, from, to)) {
+            return false;
+        }
+        return queryParamsExclude == null || !queryParamsExclude.matches(src, from, to);
+    }
+
+
+    private boolean isQuerySeparator(char c) {
+        for (char separator : querySeparators) {
+            if (c == separator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Perform non-standard tokenization.
+     * Since tokens created in this method do not pertain to a specific part of the url, {@link URLPart#WHOLE} will be
+     * used.
+     * @param url scanner holding the offsets of each part of the url
+     */
+    private void tokenizeSpecial(URLScanner url) {
+        if (!url.has(URLPart.HOST)) {
+            return;
+        }
+        final char[] buffer = url.buffer();
+        final int hostStart = url.start(URLPart.HOST);
+        final int hostEnd = url.end(URLPart.HOST);
+        // host:port
+        if (url.has(URLPart.PORT)) {
+            int end = url.end(URLPart.PORT);
+            tokens.add(URLPart.WHOLE, buffer, hostStart, end - hostStart, hostStart, end);
+        } else if (url.defaultPort() != null) {
+            // implicit port
+            tokens.begin()
+                    .append(buffer, hostStart, hostEnd - hostStart)
+                    .append(':')
+                    .append(url.defaultPort())
+                    .commit(URLPart.WHOLE, null, URLPartAttribute.SYNTHETIC, 0, 0);
+        }
+
+        // protocol://host
+        final int protocolStart = url.start(URLPart.PROTOCOL);
+        final int protocolEnd = url.end(URLPart.PROTOCOL);
+        tokens.begin();
+        for (int i = protocolStart; i < protocolEnd; i++) {
+            tokens.append(Character.toLowerCase(buffer[i]));
+        }
+        tokens.append("://")
+                .append(buffer, hostStart, hostEnd - hostStart)
+                .commit(URLPart.WHOLE, null, URLPartAttribute.SYNTHETIC, protocolStart, hostEnd);
+    }
+
+
+}
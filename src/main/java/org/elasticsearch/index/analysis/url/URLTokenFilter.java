@@ -6,19 +6,17 @@ import org.apache.lucene.analysis.path.PathHierarchyTokenizer;
 import org.apache.lucene.analysis.path.ReversePathHierarchyTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
-import org.elasticsearch.common.Strings;
+import org.elasticsearch.index.analysis.HashMode;
+import org.elasticsearch.index.analysis.IDNMode;
+import org.elasticsearch.index.analysis.OversizePolicy;
+import org.elasticsearch.index.analysis.PathMode;
 import org.elasticsearch.index.analysis.URLPart;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Joe Linn
@@ -27,37 +25,38 @@ import java.util.regex.Pattern;
 public final class URLTokenFilter extends TokenFilter {
     public static final String NAME = "url";
 
-    private List<URLPart> parts;
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final TypeAttribute typeAttribute = addAttribute(TypeAttribute.class);
+    private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute positionAttribute = addAttribute(PositionIncrementAttribute.class);
+    private final URLPartAttribute partAttribute = addAttribute(URLPartAttribute.class);
+
+    private final boolean allowMalformed;
 
-    private boolean urlDeocde;
+    private boolean passthrough;
 
     /**
-     * If true, the url's host will be tokenized using a {@link ReversePathHierarchyTokenizer}
+     * Tokenizes each input token. Configured once and reused for the lifetime of this filter.
      */
-    private boolean tokenizeHost = true;
+    private final URLTokenExtractor extractor = new URLTokenExtractor();
 
     /**
-     * If true, the url's path will be tokenized using a {@link PathHierarchyTokenizer}
+     * Index of the next token to be emitted, or -1 if no input token has been tokenized yet
      */
-    private boolean tokenizePath = true;
+    private int position = -1;
 
     /**
-     * If true, the url's query string will be split on &
+     * Offsets of the input token from which the current tokens were extracted
      */
-    private boolean tokenizeQuery = true;
-
-    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
-    private final TypeAttribute typeAttribute = addAttribute(TypeAttribute.class);
-    private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+    private int inputStartOffset;
+    private int inputEndOffset;
 
-    private final boolean allowMalformed;
-
-    private boolean tokenizeMalformed;
-
-    private boolean passthrough;
-
-    private List<Token> tokens;
-    private Iterator<Token> iterator;
+    /**
+     * True if the offsets of the current input token span exactly its term, in which case the offsets of the tokens
+     * extracted from it can be mapped back to the original text. Otherwise, every token is given the input token's
+     * offsets.
+     */
+    private boolean inputOffsetsMatchTerm;
 
     public URLTokenFilter(TokenStream input, URLPart part) {
         this(input, part, false);
@@ -73,61 +72,243 @@ public final class URLTokenFilter extends TokenFilter {
 
     public URLTokenFilter(TokenStream input, URLPart part, boolean urlDecode, boolean allowMalformed, boolean passthrough) {
         super(input);
-        if (part != null) {
-            this.parts = Collections.singletonList(part);
-        } else {
-            parts = null;
-        }
-        this.urlDeocde = urlDecode;
+        extractor.setPart(part);
+        extractor.setUrlDecode(urlDecode);
+        extractor.setAllowMalformed(allowMalformed || passthrough);
         this.allowMalformed = allowMalformed;
         this.passthrough = passthrough;
     }
 
 
     public URLTokenFilter setParts(List<URLPart> parts) {
-        this.parts = parts;
+        if (parts != null) {
+            // create a copy of the parts list to avoid ConcurrentModificationException when sorting
+            extractor.setParts(new ArrayList<>(parts));
+        }
         return this;
     }
 
+    /**
+     * If true, the url's host will be tokenized as by a {@link ReversePathHierarchyTokenizer}
+     */
     public URLTokenFilter setTokenizeHost(boolean tokenizeHost) {
-        this.tokenizeHost = tokenizeHost;
+        extractor.setTokenizeHost(tokenizeHost);
+        return this;
+    }
+
+    /**
+     * If true, the url's host will be emitted as a single token with its labels reversed, such as com.foo.www
+     */
+    public URLTokenFilter setReverseHost(boolean reverseHost) {
+        extractor.setReverseHost(reverseHost);
         return this;
     }
 
+    /**
+     * The form to which internationalized hosts are converted before they are tokenized. Defaults to
+     * {@link IDNMode#NONE}.
+     */
+    public URLTokenFilter setIdnMode(IDNMode idnMode) {
+        extractor.setIdnMode(idnMode);
+        return this;
+    }
+
+    /**
+     * Lengths of the network prefixes emitted in CIDR notation for IPv4 address hosts, such as 8, 16, and 24
+     */
+    public URLTokenFilter setIpv4PrefixLengths(int... ipv4PrefixLengths) {
+        extractor.setIpv4PrefixLengths(ipv4PrefixLengths);
+        return this;
+    }
+
+    /**
+     * Lengths of the network prefixes emitted in CIDR notation for IPv6 address hosts, such as 32, 48, and 64
+     */
+    public URLTokenFilter setIpv6PrefixLengths(int... ipv6PrefixLengths) {
+        extractor.setIpv6PrefixLengths(ipv6PrefixLengths);
+        return this;
+    }
+
+    /**
+     * If true, the url's path will be tokenized as by a {@link PathHierarchyTokenizer}
+     */
     public URLTokenFilter setTokenizePath(boolean tokenizePath) {
-        this.tokenizePath = tokenizePath;
+        extractor.setTokenizePath(tokenizePath);
         return this;
     }
 
+    /**
+     * How the url's path will be tokenized if tokenizePath is true. Defaults to {@link PathMode#HIERARCHY}.
+     */
+    public URLTokenFilter setPathMode(PathMode pathMode) {
+        extractor.setPathMode(pathMode);
+        return this;
+    }
+
+    /**
+     * Maximum number of segments in the path prefixes emitted in {@link PathMode#HYBRID} mode
+     */
+    public URLTokenFilter setPathDepth(int pathDepth) {
+        extractor.setPathDepth(pathDepth);
+        return this;
+    }
+
+    /**
+     * If true, the tokens of the url's host are stacked at a single position, as are the path prefixes
+     */
+    public URLTokenFilter setStackPositions(boolean stackPositions) {
+        extractor.setStackPositions(stackPositions);
+        return this;
+    }
+
+    /**
+     * If true, the url's query string will be split on each of the query separators
+     */
     public URLTokenFilter setTokenizeQuery(boolean tokenizeQuery) {
-        this.tokenizeQuery = tokenizeQuery;
+        extractor.setTokenizeQuery(tokenizeQuery);
+        return this;
+    }
+
+
+    public URLTokenFilter setQuerySeparators(String querySeparators) {
+        extractor.setQuerySeparators(querySeparators);
+        return this;
+    }
+
+
+    /**
+     * If set and tokenizeQuery is true, only query parameters whose names match will be emitted
+     */
+    public URLTokenFilter setQueryParamsInclude(QueryParameterMatcher include) {
+        extractor.setQueryParamsInclude(include);
+        return this;
+    }
+
+
+    /**
+     * If set and tokenizeQuery is true, query parameters whose names match will not be emitted
+     */
+    public URLTokenFilter setQueryParamsExclude(QueryParameterMatcher exclude) {
+        extractor.setQueryParamsExclude(exclude);
+        return this;
+    }
+
+
+    /**
+     * If set, the registered domain and public suffix of the url's host will be emitted as typed tokens
+     */
+    public URLTokenFilter setPublicSuffixList(PublicSuffixList publicSuffixList) {
+        extractor.setPublicSuffixList(publicSuffixList);
         return this;
     }
 
 
     public URLTokenFilter setTokenizeMalformed(boolean tokenizeMalformed) {
-        this.tokenizeMalformed = tokenizeMalformed;
+        extractor.setTokenizeMalformed(tokenizeMalformed);
         return this;
     }
 
     public URLTokenFilter setUrlDeocde(boolean urlDeocde) {
-        this.urlDeocde = urlDeocde;
+        extractor.setUrlDecode(urlDeocde);
+        return this;
+    }
+
+    /**
+     * If set, tokens will be looked up in and added to the given node level cache
+     */
+    public URLTokenFilter setCache(URLTokenCache cache) {
+        extractor.setCache(cache);
+        return this;
+    }
+
+
+    /**
+     * If greater than zero, input tokens longer than this many characters will be handled according to the oversize
+     * policy
+     */
+    public URLTokenFilter setMaxUrlLength(int maxUrlLength) {
+        extractor.setMaxUrlLength(maxUrlLength);
+        return this;
+    }
+
+
+    /**
+     * If greater than zero, tokens longer than this many characters will be handled according to the oversize policy
+     */
+    public URLTokenFilter setMaxTokenLength(int maxTokenLength) {
+        extractor.setMaxTokenLength(maxTokenLength);
+        return this;
+    }
+
+
+    /**
+     * If greater than zero, urls which produce more than this many tokens will be handled according to the oversize
+     * policy
+     */
+    public URLTokenFilter setMaxTokensPerUrl(int maxTokensPerUrl) {
+        extractor.setMaxTokensPerUrl(maxTokensPerUrl);
+        return this;
+    }
+
+
+    public URLTokenFilter setOversizePolicy(OversizePolicy oversizePolicy) {
+        extractor.setOversizePolicy(oversizePolicy);
+        return this;
+    }
+
+    /**
+     * Which characters of each well formed url are hashed into a fixed width hash token. Defaults to
+     * {@link HashMode#NONE}.
+     */
+    public URLTokenFilter setHashMode(HashMode hashMode) {
+        extractor.setHashMode(hashMode);
+        return this;
+    }
+
+    /**
+     * Number of bits in the hash token: 64 or 128. Defaults to 64.
+     */
+    public URLTokenFilter setHashBits(int hashBits) {
+        extractor.setHashBits(hashBits);
+        return this;
+    }
+
+    /**
+     * If true, the hash token takes the place of the whole url token
+     */
+    public URLTokenFilter setHashOnly(boolean hashOnly) {
+        extractor.setHashOnly(hashOnly);
+        return this;
+    }
+
+
+    public URLTokenFilter setMetrics(URLAnalysisMetrics metrics) {
+        extractor.setMetrics(metrics);
         return this;
     }
 
 
     @Override
     public boolean incrementToken() throws IOException {
-        if (iterator == null || !iterator.hasNext()) {
-            if ((iterator != null && !iterator.hasNext() && !passthrough) || !advance()) {
+        final TokenBuffer tokens = extractor.tokens();
+        if (position == -1 || position >= tokens.size()) {
+            if ((position != -1 && !passthrough) || !advance()) {
                 return false;
             }
         }
         clearAttributes();
-        Token next = iterator.next();
-        termAttribute.append(next.getToken());
-        typeAttribute.setType(next.getPart().name().toLowerCase());
-        offsetAttribute.setOffset(next.getStart(), next.getEnd());
+        termAttribute.copyBuffer(tokens.chars(), tokens.termStart(position), tokens.termLength(position));
+        typeAttribute.setType(tokens.type(position));
+        partAttribute.setPart(tokens.part(position));
+        partAttribute.setFlags(tokens.flags(position));
+        positionAttribute.setPositionIncrement(tokens.positionIncrement(position));
+        if (inputOffsetsMatchTerm) {
+            offsetAttribute.setOffset(inputStartOffset + tokens.startOffset(position),
+                    inputStartOffset + tokens.endOffset(position));
+        } else {
+            offsetAttribute.setOffset(inputStartOffset, inputEndOffset);
+        }
+        position++;
         return true;
     }
 
@@ -139,26 +320,21 @@ public final class URLTokenFilter extends TokenFilter {
      */
     private boolean advance() throws IOException {
         if (input.incrementToken()) {
-            String urlString = termAttribute.toString();
-            if ((Strings.isNullOrEmpty(urlString) || "null".equals(urlString)) && !allowMalformed && !passthrough) {
+            if ((termAttribute.length() == 0 || "null".contentEquals(termAttribute)) && !allowMalformed && !passthrough) {
                 return false;
             }
-            try {
-                tokens = tokenize(urlString);
-            } catch (IOException e) {
-                if (e.getMessage().contains("Malformed URL")) {
-                    if (allowMalformed) {
-                        tokens = Collections.singletonList(new Token(urlString, URLPart.WHOLE, 0, urlString.length()));
-                    } else {
-                        throw new MalformedURLException("Malformed URL: " + urlString);
-                    }
-                }
-                throw e;
+            inputStartOffset = offsetAttribute.startOffset();
+            inputEndOffset = offsetAttribute.endOffset();
+            inputOffsetsMatchTerm = inputEndOffset - inputStartOffset == termAttribute.length();
+            // tokenize straight from the term buffer; the extractor copies every token it produces. Malformed urls
+            // are only rejected if neither allowMalformed nor passthrough is set.
+            if (!extractor.tokenize(termAttribute.buffer(), termAttribute.length())) {
+                throw RejectedURLException.of(extractor.tokens(), termAttribute.buffer(), termAttribute.length());
             }
-            if (tokens.isEmpty()) {
+            if (extractor.tokens().size() == 0) {
                 return false;
             }
-            iterator = tokens.iterator();
+            position = 0;
             return true;
         } else {
             return false;
@@ -166,96 +342,9 @@ public final class URLTokenFilter extends TokenFilter {
     }
 
 
-    /**
-     * Tokenize the given input using a {@link URLTokenizer}. Settings which have been set on this {@link URLTokenFilter}
-     * will be passed along to the tokenizer.
-     * @param input a string to be tokenized
-     * @return a list of tokens extracted from the input string
-     * @throws IOException
-     */
-    private List<Token> tokenize(String input) throws IOException {
-        List<Token> tokens = new ArrayList<>();
-        URLTokenizer tokenizer = new URLTokenizer();
-        // create a copy of the parts list to avoid ConcurrentModificationException when sorting
-        tokenizer.setParts(new ArrayList<>(parts));
-        tokenizer.setUrlDecode(urlDeocde);
-        tokenizer.setTokenizeHost(tokenizeHost);
-        tokenizer.setTokenizePath(tokenizePath);
-        tokenizer.setTokenizeQuery(tokenizeQuery);
-        tokenizer.setAllowMalformed(allowMalformed || passthrough);
-        tokenizer.setTokenizeMalformed(tokenizeMalformed);
-        tokenizer.setReader(new StringReader(input));
-        tokenizer.reset();
-
-        String term;
-        URLPart part;
-        OffsetAttribute offset;
-        while (tokenizer.incrementToken()) {
-            term = tokenizer.getAttribute(CharTermAttribute.class).toString();
-            part = URLPart.fromString(tokenizer.getAttribute(TypeAttribute.class).type());
-            offset = tokenizer.getAttribute(OffsetAttribute.class);
-            tokens.add(new Token(term, part, offset.startOffset(), offset.endOffset()));
-        }
-        return tokens;
-    }
-
-
     @Override
     public void reset() throws IOException {
         super.reset();
-        tokens = null;
-        iterator = null;
-    }
-
-    private static final Pattern REGEX_PROTOCOL = Pattern.compile("^([a-zA-Z]+)(?=://)");
-    private static final Pattern REGEX_PORT = Pattern.compile(":([0-9]{1,5})");
-    private static final Pattern REGEX_QUERY = Pattern.compile("\\?(.+)");
-
-    /**
-     * Attempt to parse a malformed url string
-     * @param urlString the malformed url string
-     * @return the url part if it can be parsed, null otherwise
-     * @deprecated parsing of malformed URLs is now delegated to {@link URLTokenizer}
-     */
-    private String parseMalformed(String urlString) {
-        if (parts != null && !parts.isEmpty()) {
-            String ret;
-            for (URLPart part : parts) {
-                switch (part) {
-                    case PROTOCOL:
-                        ret = applyPattern(REGEX_PROTOCOL, urlString);
-                        break;
-                    case PORT:
-                        ret = applyPattern(REGEX_PORT, urlString);
-                        break;
-                    case QUERY:
-                        ret = applyPattern(REGEX_QUERY, urlString);
-                        break;
-                    case WHOLE:
-                        ret = urlString;
-                        break;
-                    default:
-                        ret = urlString;
-                }
-                if (!Strings.isNullOrEmpty(ret)) {
-                    return ret;
-                }
-            }
-        }
-        return urlString;
-    }
-
-    /**
-     * Apply the given regex pattern to the given malformed url string and return the first match
-     * @param pattern the pattern to match
-     * @param urlString the malformed url to which the pattern should be applied
-     * @return the first match if one exists, null otherwise
-     */
-    private String applyPattern(Pattern pattern, String urlString) {
-        Matcher matcher = pattern.matcher(urlString);
-        if (matcher.find()) {
-            return matcher.group(1);
-        }
-        return null;
+        position = -1;
     }
 }
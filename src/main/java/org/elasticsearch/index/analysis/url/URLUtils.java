@@ -4,21 +4,12 @@ import org.elasticsearch.index.analysis.URLPart;
 
 import java.net.URL;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Joe Linn
  * 7/30/2015
  */
 public class URLUtils {
-    private static final Pattern PATTERN_PROTOCOL = Pattern.compile("(^[a-zA-Z]*)://");
-    private static final Pattern PATTERN_HOST = Pattern.compile("^(?:^[a-zA-Z]*://)?((?=.{1,255}$)[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?(?:\\.[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?)*\\.?)/?(?:.*)");
-    private static final Pattern PATTERN_PORT = Pattern.compile("^(?:^[a-zA-Z]*://)?(?:(?=.{1,255}$)[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?(?:\\.[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?)*\\.?)(?::([0-9]*))?/?(?:.*)");
-    private static final Pattern PATTERN_PATH = Pattern.compile("(?:^[a-zA-Z]*://)?(?:(?=.{1,255}$)[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?(?:\\.[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?)*\\.?)?(?::[0-9]*)?([^\\?\\#&]*)");
-    private static final Pattern PATTERN_REF = Pattern.compile("(?:^[a-zA-Z]*://)?(?:(?=.{1,255}$)[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?(?:\\.[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?)*\\.?)?(?::[0-9]*)?(?:[^\\?\\#&]*)(#[^\\?\\&]*)?");
-    private static final Pattern PATTERN_QUERY = Pattern.compile("(?:^[a-zA-Z]*://)?(?:(?=.{1,255}$)[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?(?:\\.[0-9A-Za-z](?:(?:[0-9A-Za-z]|-){0,61}[0-9A-Za-z])?)*\\.?)?(?::[0-9]*)?(?:[^\\?\\#&]*)(?:#[^\\?\\&]*)?(\\?.*)");
-
     private URLUtils() {}
 
 
@@ -29,44 +20,24 @@ public class URLUtils {
      * @return the part of the URL, if it could be found
      */
     public static Optional<String> getPart(String url, URLPart part) {
-        switch (part) {
-            case PROTOCOL:
-                return captureFirst(url, PATTERN_PROTOCOL);
-            case HOST:
-                return captureFirst(url, PATTERN_HOST);
-            case PORT:
-                return getPort(url);
-            case PATH:
-                return captureFirst(url, PATTERN_PATH);
-            case REF:
-                Optional<String> refOptional = captureFirst(url, PATTERN_REF);
-                if (refOptional.isPresent()) {
-                    refOptional = Optional.of(refOptional.get().replaceFirst("#", ""));
-                }
-                return refOptional;
-            case QUERY:
-                Optional<String> queryOptional = captureFirst(url, PATTERN_QUERY);
-                if (queryOptional.isPresent()) {
-                    queryOptional = Optional.of(queryOptional.get().replaceFirst("\\?", ""));
-                }
-                return queryOptional;
-            case WHOLE:
-            default:
-                return Optional.of(url);
+        if (part == URLPart.PORT) {
+            return getPort(url);
+        }
+        MalformedURLScanner scanner = scan(url);
+        if (!scanner.found(part)) {
+            return Optional.empty();
         }
+        return Optional.of(url.substring(scanner.start(part), scanner.end(part)));
     }
 
 
-    private static Optional<String> captureFirst(String input, Pattern pattern) {
-        Matcher matcher = pattern.matcher(input);
-        if (matcher.find()) {
-            String group = matcher.group(1);
-            if (group == null) {
-                return Optional.empty();
-            }
-            return Optional.of(group);
+    public static Optional<String> getPort(String url) {
+        MalformedURLScanner scanner = scan(url);
+        if (scanner.found(URLPart.PORT)) {
+            return Optional.of(url.substring(scanner.start(URLPart.PORT), scanner.end(URLPart.PORT)));
         }
-        return Optional.empty();
+        // attempt to infer port form protocol
+        return Optional.ofNullable(scanner.defaultPort());
     }
 
 
@@ -75,7 +46,9 @@ public class URLUtils {
      * @param url the url from which a part is to be taken
      * @param part the part to be taken from the url
      * @return a part of the given url
+     * @deprecated the tokenizer no longer builds {@link URL}s; use {@link #getPart(String, URLPart)}
      */
+    @Deprecated
     public static String getPart(URL url, URLPart part) {
         switch (part) {
             case PROTOCOL:
@@ -103,7 +76,9 @@ public class URLUtils {
      *
      * @param url the url
      * @return the port
+     * @deprecated the tokenizer no longer builds {@link URL}s; use {@link #getPort(String)}
      */
+    @Deprecated
     public static String getPort(URL url) {
         int port = url.getPort();
         if (port == -1) {
@@ -115,17 +90,10 @@ public class URLUtils {
     }
 
 
-    public static Optional<String> getPort(String url) {
-        Optional<String> portOptional = captureFirst(url, PATTERN_PORT);
-        if (portOptional.isPresent()) {
-            return portOptional;
-        }
-        // attempt to infer port form protocol
-        Optional<String> protocolOptional = getPart(url, URLPart.PROTOCOL);
-        if (protocolOptional.isPresent()) {
-            return portFromProtocol(protocolOptional.get());
-        }
-        return Optional.empty();
+    private static MalformedURLScanner scan(String url) {
+        MalformedURLScanner scanner = new MalformedURLScanner();
+        scanner.scan(url.toCharArray(), 0, url.length());
+        return scanner;
     }
 
 
@@ -1,14 +1,46 @@
 package org.elasticsearch.plugin.analysis;
 
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.IndexModule;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.TokenFilterFactory;
 import org.elasticsearch.index.analysis.TokenizerFactory;
+import org.elasticsearch.index.analysis.URLCanonicalizeFilterFactory;
+import org.elasticsearch.index.analysis.URLCategoryFilterFactory;
+import org.elasticsearch.index.analysis.URLDomainListFilterFactory;
 import org.elasticsearch.index.analysis.URLTokenFilterFactory;
 import org.elasticsearch.index.analysis.URLTokenizerFactory;
+import org.elasticsearch.index.analysis.url.URLAnalysisStats;
+import org.elasticsearch.index.analysis.url.URLCanonicalizeFilter;
+import org.elasticsearch.index.analysis.url.URLCategoryFilter;
+import org.elasticsearch.index.analysis.url.URLDomainListFilter;
+import org.elasticsearch.index.analysis.url.URLTokenCache;
+import org.elasticsearch.index.analysis.url.URLTokenFilter;
+import org.elasticsearch.index.shard.IndexEventListener;
 import org.elasticsearch.indices.analysis.AnalysisModule;
+import org.elasticsearch.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason;
+import org.elasticsearch.plugins.ActionPlugin;
 import org.elasticsearch.plugins.AnalysisPlugin;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestHandler;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static java.util.Collections.singletonMap;
 
@@ -16,14 +48,92 @@ import static java.util.Collections.singletonMap;
  * Joe Linn
  * 1/17/2015
  */
-public class AnalysisURLPlugin extends Plugin implements AnalysisPlugin {
+public class AnalysisURLPlugin extends Plugin implements AnalysisPlugin, ActionPlugin {
+    /**
+     * Maximum estimated size of the node level cache of tokenized urls. The cache is disabled if the size is zero.
+     */
+    public static final Setting<ByteSizeValue> CACHE_SIZE_SETTING = Setting.byteSizeSetting("url_analysis.cache.size",
+            new ByteSizeValue(0), Setting.Property.NodeScope);
+
+    /**
+     * Whether url tokenizers and token filters record the work they do, to be reported by
+     * {@link RestURLAnalysisStatsAction}. Disabled by default, since recording adds a few clock reads and counter
+     * updates to the analysis of every url.
+     */
+    public static final Setting<Boolean> STATS_ENABLED_SETTING = Setting.boolSetting("url_analysis.stats.enabled",
+            false, Setting.Property.NodeScope);
+
+    private final URLTokenCache cache;
+    private final URLAnalysisStats stats;
+
+
+    public AnalysisURLPlugin(Settings settings) {
+        long cacheSize = CACHE_SIZE_SETTING.get(settings).getBytes();
+        this.cache = cacheSize > 0 ? new URLTokenCache(cacheSize) : null;
+        this.stats = STATS_ENABLED_SETTING.get(settings) ? new URLAnalysisStats() : null;
+    }
+
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return Arrays.asList(CACHE_SIZE_SETTING, STATS_ENABLED_SETTING);
+    }
+
+    @Override
+    public void onIndexModule(IndexModule indexModule) {
+        if (stats == null) {
+            return;
+        }
+        indexModule.addIndexEventListener(new IndexEventListener() {
+            @Override
+            public void afterIndexRemoved(Index index, IndexSettings indexSettings, IndexRemovalReason reason) {
+                stats.removeIndex(index.getName());
+            }
+        });
+    }
+
+    @Override
+    public List<RestHandler> getRestHandlers(Settings settings, RestController restController,
+            ClusterSettings clusterSettings, IndexScopedSettings indexScopedSettings, SettingsFilter settingsFilter,
+            IndexNameExpressionResolver indexNameExpressionResolver, Supplier<DiscoveryNodes> nodesInCluster) {
+        return Collections.singletonList(new RestURLAnalysisStatsAction(settings, restController, cache, stats));
+    }
+
     @Override
     public Map<String, AnalysisModule.AnalysisProvider<TokenFilterFactory>> getTokenFilters() {
-        return singletonMap("url", URLTokenFilterFactory::new);
+        Map<String, AnalysisModule.AnalysisProvider<TokenFilterFactory>> filters = new HashMap<>();
+        filters.put(URLTokenFilter.NAME, (indexSettings, environment, name, settings) ->
+                new URLTokenFilterFactory(indexSettings, environment, name, settings, cache, stats));
+        filters.put(URLCanonicalizeFilter.NAME, URLCanonicalizeFilterFactory::new);
+        filters.put(URLDomainListFilter.NAME, requiresAnalysisSettings(URLDomainListFilterFactory::new));
+        filters.put(URLCategoryFilter.NAME, requiresAnalysisSettings(URLCategoryFilterFactory::new));
+        return filters;
     }
 
     @Override
     public Map<String, AnalysisModule.AnalysisProvider<TokenizerFactory>> getTokenizers() {
-        return singletonMap("url", URLTokenizerFactory::new);
+        return singletonMap("url", (indexSettings, environment, name, settings) ->
+                new URLTokenizerFactory(indexSettings, environment, name, settings, cache, stats));
+    }
+
+
+    /**
+     * Mark a provider as unusable without settings, so that Elasticsearch does not build it for every index with empty
+     * settings, which would fail for factories with required settings
+     */
+    private static <T> AnalysisModule.AnalysisProvider<T> requiresAnalysisSettings(
+            AnalysisModule.AnalysisProvider<T> provider) {
+        return new AnalysisModule.AnalysisProvider<T>() {
+            @Override
+            public T get(IndexSettings indexSettings, Environment environment, String name, Settings settings)
+                    throws IOException {
+                return provider.get(indexSettings, environment, name, settings);
+            }
+
+            @Override
+            public boolean requiresAnalysisSettings() {
+                return true;
+            }
+        };
     }
 }
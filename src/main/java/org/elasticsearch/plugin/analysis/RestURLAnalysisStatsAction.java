@@ -0,0 +1,88 @@
+package org.elasticsearch.plugin.analysis;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.analysis.URLPart;
+import org.elasticsearch.index.analysis.url.URLAnalysisMetrics;
+import org.elasticsearch.index.analysis.url.URLAnalysisStats;
+import org.elasticsearch.index.analysis.url.URLTokenCache;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reports the url analysis stats of the node which receives the request: the state of the node level token cache,
+ * and the work done by each url tokenizer and token filter, by index.
+ */
+public class RestURLAnalysisStatsAction extends BaseRestHandler {
+    private final URLTokenCache cache;
+    private final URLAnalysisStats stats;
+
+
+    public RestURLAnalysisStatsAction(Settings settings, RestController controller, URLTokenCache cache,
+            URLAnalysisStats stats) {
+        super(settings);
+        this.cache = cache;
+        this.stats = stats;
+        controller.registerHandler(RestRequest.Method.GET, "/_url_analysis/stats", this);
+    }
+
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        return channel -> {
+            XContentBuilder builder = channel.newBuilder();
+            builder.startObject();
+            if (cache != null) {
+                URLTokenCache.Stats cacheStats = cache.stats();
+                builder.startObject("cache")
+                        .field("count", cacheStats.getCount())
+                        .field("size_in_bytes", cacheStats.getSizeInBytes())
+                        .field("hits", cacheStats.getHits())
+                        .field("misses", cacheStats.getMisses())
+                        .field("evictions", cacheStats.getEvictions())
+                        .endObject();
+            }
+            builder.startObject("indices");
+            if (stats != null) {
+                for (Map.Entry<String, Map<String, Map<String, URLAnalysisMetrics>>> index : stats.indices().entrySet()) {
+                    builder.startObject(index.getKey());
+                    for (Map.Entry<String, Map<String, URLAnalysisMetrics>> kind : index.getValue().entrySet()) {
+                        builder.startObject(kind.getKey());
+                        for (Map.Entry<String, URLAnalysisMetrics> component : kind.getValue().entrySet()) {
+                            builder.startObject(component.getKey());
+                            toXContent(component.getValue(), builder);
+                            builder.endObject();
+                        }
+                        builder.endObject();
+                    }
+                    builder.endObject();
+                }
+            }
+            builder.endObject();
+            builder.endObject();
+            channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+        };
+    }
+
+
+    private static void toXContent(URLAnalysisMetrics metrics, XContentBuilder builder) throws IOException {
+        builder.field("urls", metrics.getUrls());
+        builder.field("malformed", metrics.getMalformed());
+        builder.field("decode_failures", metrics.getDecodeFailures());
+        builder.field("cache_hits", metrics.getCacheHits());
+        builder.field("analysis_time_in_nanos", metrics.getAnalysisNanos());
+        builder.startObject("tokens");
+        for (URLPart part : URLPart.values()) {
+            builder.field(part.name().toLowerCase(Locale.ROOT), metrics.getTokens(part));
+        }
+        builder.endObject();
+    }
+}
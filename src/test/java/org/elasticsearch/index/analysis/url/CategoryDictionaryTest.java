@@ -0,0 +1,108 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CategoryDictionaryTest {
+    private static final String RULES = "# comment\n" +
+            "example.com          news\n" +
+            "example.com/sports/  news, sports\n" +
+            "example.com/sports/tennis  tennis\n" +
+            "live.example.com     video\n" +
+            "\n" +
+            "cdn.example.net      cdn\n" +
+            "Example.NET/ads      ads\n" +
+            "example.net/ads      tracking\n";
+
+    private final CategoryDictionary.Matcher matcher;
+
+
+    public CategoryDictionaryTest() throws IOException {
+        matcher = CategoryDictionary.parse("test", new StringReader(RULES)).matcher();
+    }
+
+
+    @Test
+    public void testHostRules() throws IOException {
+        assertThat(match("http://example.com/"), equalTo(new String[]{"news"}));
+        assertThat(match("http://www.example.com/index.html"), equalTo(new String[]{"news"}));
+        assertThat(match("http://WWW.EXAMPLE.COM."), equalTo(new String[]{"news"}));
+        assertThat(match("http://img.cdn.example.net/a.png"), equalTo(new String[]{"cdn"}));
+        assertThat(match("http://myexample.com/sports"), nullValue());
+        assertThat(match("http://example.net/"), nullValue());
+        assertThat(match("http://example.org/"), nullValue());
+    }
+
+
+    @Test
+    public void testLongestMatch() throws IOException {
+        assertThat(match("http://www.example.com/sports"), equalTo(new String[]{"news", "sports"}));
+        assertThat(match("http://www.example.com/sports/today.html?q=1"), equalTo(new String[]{"news", "sports"}));
+        assertThat(match("http://www.example.com/sports/tennis/"), equalTo(new String[]{"tennis"}));
+        // path prefixes only match whole segments, and are case sensitive
+        assertThat(match("http://www.example.com/sportscar"), equalTo(new String[]{"news"}));
+        assertThat(match("http://www.example.com/Sports"), equalTo(new String[]{"news"}));
+        // a rule with more host labels is more specific than a rule with a longer path
+        assertThat(match("http://live.example.com/sports/tennis"), equalTo(new String[]{"video"}));
+        // categories of repeated rules are combined
+        assertThat(match("http://example.net/ads/banner.gif"), equalTo(new String[]{"ads", "tracking"}));
+    }
+
+
+    @Test
+    public void testLoadIsShared() throws IOException {
+        final Path file = Files.createTempFile("categories", ".txt");
+        try {
+            Files.write(file, Collections.singletonList("example.com news"), StandardCharsets.UTF_8);
+            final CategoryDictionary dictionary = CategoryDictionary.load(file);
+            assertThat(CategoryDictionary.load(file), sameInstance(dictionary));
+            assertThat(dictionary.size(), equalTo(1));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+
+    @Test
+    public void testModifiedFileIsReloaded() throws IOException {
+        final Path file = Files.createTempFile("categories", ".txt");
+        try {
+            Files.write(file, Collections.singletonList("example.com news"), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+            final CategoryDictionary dictionary = CategoryDictionary.load(file);
+
+            Files.write(file, Arrays.asList("example.com sports", "example.net news"), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(2000));
+            final CategoryDictionary reloaded = CategoryDictionary.load(file);
+            assertThat(reloaded, not(sameInstance(dictionary)));
+            assertThat(CategoryDictionary.load(file), sameInstance(reloaded));
+            assertThat(reloaded.size(), equalTo(2));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+
+    private String[] match(String url) throws IOException {
+        final URLScanner scanner = new URLScanner();
+        final char[] chars = url.toCharArray();
+        assertThat(scanner.scan(chars, 0, chars.length), equalTo(true));
+        return matcher.match(chars, scanner.start(URLPart.HOST), scanner.end(URLPart.HOST),
+                scanner.start(URLPart.PATH), scanner.end(URLPart.PATH));
+    }
+}
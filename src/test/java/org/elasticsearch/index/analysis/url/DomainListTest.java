@@ -0,0 +1,123 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DomainListTest {
+    private static final String DOMAINS = "# comment\n" +
+            "example.com\n" +
+            "ads.example.net   trailing text is ignored\n" +
+            "*.tracker.org\n" +
+            "\n" +
+            "Example.COM\n" +
+            "\u03b5\u03bb.gr\n";
+
+    @Test
+    public void testMatches() throws IOException {
+        final DomainList.Matcher matcher = DomainList.parse("test", new StringReader(DOMAINS)).matcher();
+        assertThat(matches(matcher, "example.com"), equalTo(true));
+        assertThat(matches(matcher, "www.example.com"), equalTo(true));
+        assertThat(matches(matcher, "a.b.example.com."), equalTo(true));
+        assertThat(matches(matcher, "WWW.EXAMPLE.COM"), equalTo(true));
+        assertThat(matches(matcher, "ads.example.net"), equalTo(true));
+        assertThat(matches(matcher, "cdn.ads.example.net"), equalTo(true));
+        assertThat(matches(matcher, "tracker.org"), equalTo(true));
+        // only whole labels match
+        assertThat(matches(matcher, "myexample.com"), equalTo(false));
+        assertThat(matches(matcher, "example.com.au"), equalTo(false));
+        assertThat(matches(matcher, "example.net"), equalTo(false));
+        assertThat(matches(matcher, "com"), equalTo(false));
+        assertThat(matches(matcher, ""), equalTo(false));
+    }
+
+
+    @Test
+    public void testInternationalizedDomains() throws IOException {
+        final DomainList list = DomainList.parse("test", new StringReader(DOMAINS));
+        assertThat(list.size(), equalTo(5));
+        final DomainList.Matcher matcher = list.matcher();
+        assertThat(matches(matcher, "www.\u03b5\u03bb.gr"), equalTo(true));
+        assertThat(matches(matcher, "www.xn--qxam.gr"), equalTo(true));
+    }
+
+
+    @Test
+    public void testEmptyList() throws IOException {
+        final DomainList list = DomainList.parse("test", new StringReader("# nothing\n"));
+        assertThat(list.size(), equalTo(0));
+        assertThat(matches(list.matcher(), "example.com"), equalTo(false));
+    }
+
+
+    @Test
+    public void testKeysSortAsChars() throws IOException {
+        // a surrogate pair sorts before U+E000 as chars, but after it as code points
+        final DomainList.Matcher matcher = DomainList.parse("test",
+                new StringReader("\uE000.com\n\uD83D\uDE00.com\nb.com\na.com\nb.com\n")).matcher();
+        assertThat(matches(matcher, "\uE000.com"), equalTo(true));
+        assertThat(matches(matcher, "www.\uD83D\uDE00.com"), equalTo(true));
+        assertThat(matches(matcher, "a.com"), equalTo(true));
+        assertThat(matches(matcher, "b.com"), equalTo(true));
+        assertThat(matches(matcher, "c.com"), equalTo(false));
+    }
+
+
+    @Test
+    public void testReverseLabels() {
+        assertThat(DomainList.reverseLabels("www.example.com"), equalTo("com.example.www"));
+        assertThat(DomainList.reverseLabels("localhost"), equalTo("localhost"));
+    }
+
+
+    @Test
+    public void testLoadIsShared() throws IOException {
+        final Path file = Files.createTempFile("domain_list", ".txt");
+        try {
+            Files.write(file, Collections.singletonList("example.com"), StandardCharsets.UTF_8);
+            final DomainList list = DomainList.load(file);
+            assertThat(DomainList.load(file), sameInstance(list));
+            assertThat(matches(list.matcher(), "www.example.com"), equalTo(true));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+
+    @Test
+    public void testModifiedFileIsReloaded() throws IOException {
+        final Path file = Files.createTempFile("domain_list", ".txt");
+        try {
+            Files.write(file, Collections.singletonList("example.com"), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+            final DomainList list = DomainList.load(file);
+
+            Files.write(file, Collections.singletonList("example.net"), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(2000));
+            final DomainList reloaded = DomainList.load(file);
+            assertThat(reloaded, not(sameInstance(list)));
+            assertThat(DomainList.load(file), sameInstance(reloaded));
+            assertThat(matches(reloaded.matcher(), "example.com"), equalTo(false));
+            assertThat(matches(reloaded.matcher(), "example.net"), equalTo(true));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+
+    private static boolean matches(DomainList.Matcher matcher, String host) throws IOException {
+        final char[] chars = host.toCharArray();
+        return matcher.matches(chars, 0, chars.length);
+    }
+}
@@ -0,0 +1,76 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class InetAddressParserTest {
+    private final InetAddressParser parser = new InetAddressParser();
+
+    @Test
+    public void testParseIPv4() {
+        assertThat(parse("192.168.1.20"), equalTo(InetAddressParser.IPV4_LENGTH));
+        assertThat(parse("0.0.0.0"), equalTo(InetAddressParser.IPV4_LENGTH));
+        assertThat(parse("255.255.255.255"), equalTo(InetAddressParser.IPV4_LENGTH));
+
+        assertThat(parse("256.1.1.1"), equalTo(0));
+        assertThat(parse("1.2.3"), equalTo(0));
+        assertThat(parse("1.2.3.4.5"), equalTo(0));
+        assertThat(parse("01.2.3.4"), equalTo(0));
+        assertThat(parse("1.2.3.4:80"), equalTo(0));
+        assertThat(parse("[1.2.3.4]"), equalTo(0));
+        assertThat(parse("foo.com"), equalTo(0));
+    }
+
+
+    @Test
+    public void testParseIPv6() {
+        assertThat(parse("2001:db8:85a3:0:0:8a2e:370:7334"), equalTo(InetAddressParser.IPV6_LENGTH));
+        assertThat(parse("[2001:DB8::1]"), equalTo(InetAddressParser.IPV6_LENGTH));
+        assertThat(parse("::"), equalTo(InetAddressParser.IPV6_LENGTH));
+        assertThat(parse("::1"), equalTo(InetAddressParser.IPV6_LENGTH));
+        assertThat(parse("fe80::"), equalTo(InetAddressParser.IPV6_LENGTH));
+        assertThat(parse("::ffff:10.1.2.3"), equalTo(InetAddressParser.IPV6_LENGTH));
+
+        assertThat(parse("1:2:3:4:5:6:7:8:9"), equalTo(0));
+        assertThat(parse("1::2::3"), equalTo(0));
+        assertThat(parse(":::"), equalTo(0));
+        assertThat(parse("1:"), equalTo(0));
+        assertThat(parse("12345::"), equalTo(0));
+        assertThat(parse("fe80::1%eth0"), equalTo(0));
+        assertThat(parse("[::1"), equalTo(0));
+    }
+
+
+    @Test
+    public void testFormatPrefix() {
+        parse("192.168.1.20");
+        assertThat(formatPrefix(32), equalTo("192.168.1.20/32"));
+        assertThat(formatPrefix(24), equalTo("192.168.1.0/24"));
+        assertThat(formatPrefix(12), equalTo("192.160.0.0/12"));
+        assertThat(formatPrefix(0), equalTo("0.0.0.0/0"));
+
+        parse("[2001:db8:85a3::8a2e:370:7334]");
+        assertThat(formatPrefix(128), equalTo("2001:db8:85a3::8a2e:370:7334/128"));
+        assertThat(formatPrefix(64), equalTo("2001:db8:85a3::/64"));
+        assertThat(formatPrefix(32), equalTo("2001:db8::/32"));
+        assertThat(formatPrefix(24), equalTo("2001:d00::/24"));
+
+        // the first of the longest runs of zero groups is compressed
+        parse("1:0:0:1:0:0:0:1");
+        assertThat(formatPrefix(128), equalTo("1:0:0:1::1/128"));
+        parse("1:0:1:1:1:1:1:1");
+        assertThat(formatPrefix(128), equalTo("1:0:1:1:1:1:1:1/128"));
+    }
+
+
+    private int parse(String host) {
+        return parser.parse(host.toCharArray(), 0, host.length());
+    }
+
+
+    private String formatPrefix(int prefixLength) {
+        return new String(parser.output(), 0, parser.formatPrefix(prefixLength));
+    }
+}
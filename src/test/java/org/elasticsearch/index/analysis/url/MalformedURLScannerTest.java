@@ -0,0 +1,116 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MalformedURLScannerTest {
+    private final MalformedURLScanner scanner = new MalformedURLScanner();
+
+    @Test
+    public void testNoProtocol() {
+        final String url = "foo.bar.com:8080/baz/bat.html#whee?bob=loblaw&this=that";
+        scan(url);
+        assertThat(scanner.found(URLPart.PROTOCOL), equalTo(false));
+        assertThat(part(url, URLPart.HOST), equalTo("foo.bar.com"));
+        assertThat(part(url, URLPart.PORT), equalTo("8080"));
+        assertThat(part(url, URLPart.PATH), equalTo("/baz/bat.html"));
+        assertThat(part(url, URLPart.REF), equalTo("whee"));
+        assertThat(part(url, URLPart.QUERY), equalTo("bob=loblaw&this=that"));
+        assertThat(scanner.defaultPort(), nullValue());
+    }
+
+
+    @Test
+    public void testPathOnly() {
+        final String url = "/baz/bat.html?bob=loblaw";
+        scan(url);
+        assertThat(scanner.found(URLPart.HOST), equalTo(false));
+        assertThat(part(url, URLPart.PATH), equalTo("/baz/bat.html"));
+        assertThat(scanner.found(URLPart.REF), equalTo(false));
+        assertThat(part(url, URLPart.QUERY), equalTo("bob=loblaw"));
+    }
+
+
+    @Test
+    public void testInvalidHost() {
+        final String url = "http://:::::::/baz";
+        scan(url);
+        assertThat(part(url, URLPart.PROTOCOL), equalTo("http"));
+        // as no host follows the protocol, the protocol itself is taken to be the host
+        assertThat(part(url, URLPart.HOST), equalTo("http"));
+        assertThat(part(url, URLPart.PORT), equalTo(""));
+        assertThat(part(url, URLPart.PATH), equalTo("::::::/baz"));
+        assertThat(scanner.defaultPort(), nullValue());
+    }
+
+
+    @Test
+    public void testInferPort() {
+        scan("http://foo.com/bar");
+        assertThat(scanner.found(URLPart.PORT), equalTo(false));
+        assertThat(scanner.defaultPort(), equalTo("80"));
+        scan("https://foo.com/bar");
+        assertThat(scanner.defaultPort(), equalTo("443"));
+    }
+
+
+    @Test
+    public void testHostLabels() {
+        String url = "foo-.com/bar";
+        scan(url);
+        assertThat(part(url, URLPart.HOST), equalTo("foo"));
+        assertThat(part(url, URLPart.PATH), equalTo("-.com/bar"));
+
+        url = "foo.com./bar";
+        scan(url);
+        assertThat(part(url, URLPart.HOST), equalTo("foo.com."));
+    }
+
+
+    @Test
+    public void testLongInput() {
+        StringBuilder url = new StringBuilder("foo.com/");
+        for (int i = 0; i < 100000; i++) {
+            url.append("a-");
+        }
+        url.append("?q=1");
+        scan(url.toString());
+        // hosts are only recognized within the first 255 characters of the input
+        assertThat(scanner.found(URLPart.HOST), equalTo(false));
+        assertThat(scanner.end(URLPart.PATH), equalTo(url.length() - 4));
+        assertThat(part(url.toString(), URLPart.QUERY), equalTo("q=1"));
+    }
+
+
+    @Test
+    public void testResult() {
+        assertThat(result("http://:::::::/baz"), equalTo(ParseResult.RECOVERABLE));
+        assertThat(result("foo.com/bar"), equalTo(ParseResult.RECOVERABLE));
+        assertThat(result("foo.com./bar"), equalTo(ParseResult.RECOVERABLE));
+        assertThat(result("localhost/bar"), equalTo(ParseResult.GARBAGE));
+        assertThat(result("com./bar"), equalTo(ParseResult.GARBAGE));
+        assertThat(result("/baz/bat.html?bob=loblaw"), equalTo(ParseResult.RECOVERABLE));
+        assertThat(result("not a url"), equalTo(ParseResult.GARBAGE));
+        assertThat(result(""), equalTo(ParseResult.GARBAGE));
+    }
+
+
+    private ParseResult result(String url) {
+        scan(url);
+        return scanner.result();
+    }
+
+
+    private void scan(String url) {
+        scanner.scan(url.toCharArray(), 0, url.length());
+    }
+
+
+    private String part(String url, URLPart part) {
+        return url.substring(scanner.start(part), scanner.end(part));
+    }
+}
@@ -0,0 +1,78 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PercentDecoderTest {
+    private final PercentDecoder decoder = new PercentDecoder();
+
+    @Test
+    public void testDecode() {
+        assertThat(decode("foo%20bar+baz"), equalTo("foo bar baz"));
+        assertThat(decode("email=foo%40bar.com"), equalTo("email=foo@bar.com"));
+        assertThat(decode("%e2%82%ac%C3%A9"), equalTo("\u20ac\u00e9"));
+        assertThat(decode("%F0%9F%98%80"), equalTo("\ud83d\ude00"));
+        assertThat(decoder.invalidEscapes(), equalTo(0));
+    }
+
+
+    @Test
+    public void testNeedsDecoding() {
+        assertThat(PercentDecoder.needsDecoding("/foo/bar".toCharArray(), 0, 8), equalTo(false));
+        assertThat(PercentDecoder.needsDecoding("a+b".toCharArray(), 0, 3), equalTo(true));
+        assertThat(PercentDecoder.needsDecoding("a%20".toCharArray(), 0, 4), equalTo(true));
+        assertThat(PercentDecoder.needsDecoding("a%20".toCharArray(), 0, 1), equalTo(false));
+    }
+
+
+    @Test
+    public void testInvalidEscapes() {
+        assertThat(decode("foo%2vbar%20baz"), equalTo("foo%2vbar baz"));
+        assertThat(decoder.invalidEscapes(), equalTo(1));
+        assertThat(decode("%%41%"), equalTo("%A%"));
+        assertThat(decoder.invalidEscapes(), equalTo(2));
+        assertThat(decode("%-1%+1"), equalTo("%-1% 1"));
+        assertThat(decoder.invalidEscapes(), equalTo(2));
+    }
+
+
+    @Test
+    public void testMalformedUTF8() {
+        // invalid byte sequences are replaced, as by java.net.URLDecoder
+        assertThat(decode("%C3%28"), equalTo("\ufffd("));
+        assertThat(decode("%E2%82"), equalTo("\ufffd"));
+        assertThat(decode("%C0%80"), equalTo("\ufffd\ufffd"));
+        assertThat(decode("%ED%A0%80"), equalTo("\ufffd"));
+        assertThat(decode("%FF"), equalTo("\ufffd"));
+        assertThat(decoder.invalidEscapes(), equalTo(0));
+    }
+
+
+    @Test
+    public void testDecodeRange() {
+        final char[] buffer = "xx%41%42yy".toCharArray();
+        final int length = decoder.decode(buffer, 2, 6);
+        assertThat(new String(buffer, 0, 2 + length), equalTo("xxAB"));
+        assertThat(new String(buffer, 8, 2), equalTo("yy"));
+    }
+
+
+    @Test
+    public void testSourceOffsets() {
+        final char[] buffer = "a%20b+%E2%82%AC%F0%9F%98%80".toCharArray();
+        final int[] offsets = new int[buffer.length + 1];
+        final int length = decoder.decode(buffer, 0, buffer.length, offsets);
+        assertThat(new String(buffer, 0, length), equalTo("a b \u20ac\ud83d\ude00"));
+        assertThat(Arrays.copyOf(offsets, length + 1), equalTo(new int[]{0, 1, 4, 5, 6, 15, 15, 27}));
+    }
+
+
+    private String decode(String s) {
+        final char[] buffer = s.toCharArray();
+        return new String(buffer, 0, decoder.decode(buffer, 0, buffer.length));
+    }
+}
@@ -0,0 +1,146 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PublicSuffixListTest {
+    private static final String RULES = "// comment\n" +
+            "com\n" +
+            "uk\n" +
+            "co.uk\n" +
+            "\n" +
+            "jp\n" +
+            "*.kawasaki.jp\n" +
+            "!city.kawasaki.jp\n" +
+            "*.ck\n" +
+            "!www.ck\n" +
+            "github.io   trailing text is ignored\n" +
+            "\u0395\u03bb.com\n";
+
+    @Test
+    public void testPublicSuffix() throws IOException {
+        final PublicSuffixList list = PublicSuffixList.parse("test", new StringReader(RULES));
+        assertThat(publicSuffix(list, "www.example.com"), equalTo("com"));
+        assertThat(publicSuffix(list, "example.co.uk"), equalTo("co.uk"));
+        assertThat(publicSuffix(list, "www.example.co.uk"), equalTo("co.uk"));
+        assertThat(publicSuffix(list, "example.uk"), equalTo("uk"));
+        assertThat(publicSuffix(list, "co.uk"), equalTo("co.uk"));
+        assertThat(publicSuffix(list, "foo.github.io"), equalTo("github.io"));
+        // hosts are matched case insensitively
+        assertThat(publicSuffix(list, "WWW.Example.CO.UK"), equalTo("CO.UK"));
+        // the top level domain of a host under no rule is its public suffix
+        assertThat(publicSuffix(list, "localhost"), equalTo("localhost"));
+        assertThat(publicSuffix(list, "example.test"), equalTo("test"));
+        assertThat(publicSuffix(list, "example.io"), equalTo("io"));
+        assertThat(publicSuffix(list, "example.com."), nullValue());
+    }
+
+
+    @Test
+    public void testWildcardsAndExceptions() throws IOException {
+        final PublicSuffixList list = PublicSuffixList.parse("test", new StringReader(RULES));
+        assertThat(publicSuffix(list, "www.foo.kawasaki.jp"), equalTo("foo.kawasaki.jp"));
+        assertThat(publicSuffix(list, "city.kawasaki.jp"), equalTo("kawasaki.jp"));
+        assertThat(publicSuffix(list, "www.city.kawasaki.jp"), equalTo("kawasaki.jp"));
+        assertThat(publicSuffix(list, "foo.ck"), equalTo("foo.ck"));
+        assertThat(publicSuffix(list, "www.ck"), equalTo("ck"));
+    }
+
+
+    @Test
+    public void testInternationalizedRules() throws IOException {
+        final PublicSuffixList list = PublicSuffixList.parse("test", new StringReader(RULES));
+        assertThat(publicSuffix(list, "foo.\u03b5\u03bb.com"), equalTo("\u03b5\u03bb.com"));
+        assertThat(publicSuffix(list, "foo.xn--qxam.com"), equalTo("xn--qxam.com"));
+    }
+
+
+    @Test
+    public void testRegisteredDomain() throws IOException {
+        final PublicSuffixList list = PublicSuffixList.parse("test", new StringReader(RULES));
+        assertThat(registeredDomain(list, "www.example.co.uk"), equalTo("example.co.uk"));
+        assertThat(registeredDomain(list, "example.co.uk"), equalTo("example.co.uk"));
+        assertThat(registeredDomain(list, "co.uk"), nullValue());
+        assertThat(registeredDomain(list, "www.city.kawasaki.jp"), equalTo("city.kawasaki.jp"));
+        assertThat(registeredDomain(list, "www.example.test"), equalTo("example.test"));
+        assertThat(registeredDomain(list, "localhost"), nullValue());
+    }
+
+
+    @Test
+    public void testDefaultList() {
+        final PublicSuffixList list = PublicSuffixList.getDefault();
+        assertThat(PublicSuffixList.getDefault(), sameInstance(list));
+        assertThat(publicSuffix(list, "www.example.com"), equalTo("com"));
+        assertThat(publicSuffix(list, "www.example.co.uk"), equalTo("co.uk"));
+        assertThat(publicSuffix(list, "www.city.tokyo.jp"), equalTo("tokyo.jp"));
+        assertThat(publicSuffix(list, "www.example.gl"), equalTo("gl"));
+        assertThat(publicSuffix(list, "foo.github.io"), equalTo("github.io"));
+        assertThat(publicSuffix(list, "www.city.kawasaki.jp"), equalTo("kawasaki.jp"));
+        assertThat(publicSuffix(list, "www.foo.kawasaki.jp"), equalTo("foo.kawasaki.jp"));
+        assertThat(publicSuffix(list, "foo.xn--fiqs8s"), equalTo("xn--fiqs8s"));
+        assertThat(registeredDomain(list, "www.city.tokyo.jp"), equalTo("city.tokyo.jp"));
+    }
+
+
+    @Test
+    public void testLoadIsShared() throws IOException {
+        final Path file = Files.createTempFile("public_suffix_list", ".dat");
+        try {
+            Files.write(file, Collections.singletonList("com"), StandardCharsets.UTF_8);
+            final PublicSuffixList list = PublicSuffixList.load(file);
+            assertThat(PublicSuffixList.load(file), sameInstance(list));
+            assertThat(publicSuffix(list, "example.com"), equalTo("com"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+
+    @Test
+    public void testModifiedFileIsReloaded() throws IOException {
+        final Path file = Files.createTempFile("public_suffix_list", ".dat");
+        try {
+            Files.write(file, Collections.singletonList("com"), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+            final PublicSuffixList list = PublicSuffixList.load(file);
+
+            Files.write(file, Collections.singletonList("example.com"), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(2000));
+            final PublicSuffixList reloaded = PublicSuffixList.load(file);
+            assertThat(reloaded, not(sameInstance(list)));
+            assertThat(PublicSuffixList.load(file), sameInstance(reloaded));
+            assertThat(reloaded.name(), not(equalTo(list.name())));
+            assertThat(publicSuffix(reloaded, "www.example.com"), equalTo("example.com"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+
+    private static String publicSuffix(PublicSuffixList list, String host) {
+        final char[] chars = host.toCharArray();
+        final int start = list.publicSuffixStart(chars, 0, chars.length);
+        return start == -1 ? null : host.substring(start);
+    }
+
+
+    private static String registeredDomain(PublicSuffixList list, String host) {
+        final char[] chars = host.toCharArray();
+        final int start = PublicSuffixList.registeredDomainStart(chars, 0, list.publicSuffixStart(chars, 0, chars.length));
+        return start == -1 ? null : host.substring(start);
+    }
+}
@@ -0,0 +1,57 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryParameterMatcherTest {
+    private final QueryParameterMatcher matcher = QueryParameterMatcher.compile("utm_*", "fbclid", "gclid", "sid");
+
+    @Test
+    public void testExactNames() {
+        assertThat(matches("fbclid=IwAR2xK7"), equalTo(true));
+        assertThat(matches("gclid"), equalTo(true));
+        assertThat(matches("sid=1"), equalTo(true));
+        assertThat(matches("si=1"), equalTo(false));
+        assertThat(matches("sids=1"), equalTo(false));
+        assertThat(matches("SID=1"), equalTo(false));
+    }
+
+
+    @Test
+    public void testPrefixes() {
+        assertThat(matches("utm_source=google"), equalTo(true));
+        assertThat(matches("utm_=x"), equalTo(true));
+        assertThat(matches("utm=x"), equalTo(false));
+        assertThat(matches("q=utm_source"), equalTo(false));
+    }
+
+
+    @Test
+    public void testMatchRange() {
+        final char[] query = "q=foo&fbclid=bar".toCharArray();
+        assertThat(matcher.matches(query, 0, 5), equalTo(false));
+        assertThat(matcher.matches(query, 6, query.length), equalTo(true));
+    }
+
+
+    @Test
+    public void testCompile() {
+        assertThat(QueryParameterMatcher.compile(), nullValue());
+        assertThat(matcher.toString(), equalTo("fbclid,gclid,sid,utm_*"));
+        assertThat(QueryParameterMatcher.compile("*").matches("anything".toCharArray(), 0, 8), equalTo(true));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPattern() {
+        QueryParameterMatcher.compile("foo", "");
+    }
+
+
+    private boolean matches(String param) {
+        return matcher.matches(param.toCharArray(), 0, param.length());
+    }
+}
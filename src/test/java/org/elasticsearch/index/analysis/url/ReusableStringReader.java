@@ -0,0 +1,37 @@
+package org.elasticsearch.index.analysis.url;
+
+import java.io.Reader;
+
+/**
+ * A {@link Reader} over a string which can be reset to a new value, so that allocation tests and benchmarks do not
+ * measure the allocation of a new reader for every input.
+ */
+final class ReusableStringReader extends Reader {
+    private String value;
+    private int position;
+
+
+    void setValue(String value) {
+        this.value = value;
+        this.position = 0;
+    }
+
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        final int remaining = value.length() - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        final int read = Math.min(remaining, length);
+        value.getChars(position, position + read, buffer, offset);
+        position += read;
+        return read;
+    }
+
+
+    @Override
+    public void close() {
+        value = null;
+    }
+}
@@ -0,0 +1,187 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TokenBufferTest {
+    private final TokenBuffer buffer = new TokenBuffer();
+
+    @Test
+    public void testAddTokens() {
+        buffer.reset(false);
+        final char[] url = "http://foo.com".toCharArray();
+        buffer.add(URLPart.PROTOCOL, url, 0, 4, 0, 4);
+        buffer.begin().append(url, 7, 7).append(':').append("80").commit(URLPart.WHOLE, 0, 0);
+
+        assertThat(buffer.size(), equalTo(2));
+        assertThat(term(0), equalTo("http"));
+        assertThat(buffer.part(0), equalTo(URLPart.PROTOCOL));
+        assertThat(buffer.startOffset(0), equalTo(0));
+        assertThat(buffer.endOffset(0), equalTo(4));
+        assertThat(term(1), equalTo("foo.com:80"));
+        assertThat(buffer.part(1), equalTo(URLPart.WHOLE));
+    }
+
+
+    @Test
+    public void testDeduplicate() {
+        final char[] url = "foo.com".toCharArray();
+        buffer.reset(true);
+        assertThat(buffer.add(URLPart.HOST, url, 0, url.length, 0, 7), equalTo(true));
+        assertThat(buffer.add(URLPart.HOST, url, 0, url.length, 0, 7), equalTo(false));
+        // tokens which differ by part or offsets are not duplicates
+        assertThat(buffer.add(URLPart.WHOLE, url, 0, url.length, 0, 7), equalTo(true));
+        assertThat(buffer.add(URLPart.HOST, url, 0, url.length, 0, 0), equalTo(true));
+        assertThat(buffer.size(), equalTo(3));
+
+        buffer.reset(false);
+        assertThat(buffer.add(URLPart.HOST, url, 0, url.length, 0, 7), equalTo(true));
+        assertThat(buffer.add(URLPart.HOST, url, 0, url.length, 0, 7), equalTo(true));
+        assertThat(buffer.size(), equalTo(2));
+    }
+
+
+    @Test
+    public void testDeduplicateManyTokens() {
+        buffer.reset(true);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(buffer.begin().append(Integer.toString(i)).commit(URLPart.QUERY, 0, 1), equalTo(true));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(buffer.begin().append(Integer.toString(i)).commit(URLPart.QUERY, 0, 1), equalTo(false));
+        }
+        assertThat(buffer.size(), equalTo(1000));
+
+        // removed tokens are no longer duplicates, and the tokens which moved up still are
+        buffer.remove(0);
+        assertThat(buffer.begin().append("1").commit(URLPart.QUERY, 0, 1), equalTo(false));
+        assertThat(buffer.begin().append("0").commit(URLPart.QUERY, 0, 1), equalTo(true));
+
+        // nothing is remembered across a reset
+        buffer.reset(true);
+        assertThat(buffer.begin().append("1").commit(URLPart.QUERY, 0, 1), equalTo(true));
+        assertThat(buffer.size(), equalTo(1));
+    }
+
+
+    @Test
+    public void testBeginDiscardsUncommittedCharacters() {
+        buffer.reset(false);
+        buffer.begin().append("discarded");
+        buffer.begin().append("kept").commit(URLPart.PATH, 0, 4);
+        assertThat(buffer.size(), equalTo(1));
+        assertThat(term(0), equalTo("kept"));
+    }
+
+
+    @Test
+    public void testGrowAndReuse() {
+        buffer.reset(false);
+        for (int i = 0; i < 1000; i++) {
+            buffer.begin().append(Integer.toString(i)).commit(URLPart.QUERY, i, i + 1);
+        }
+        assertThat(buffer.size(), equalTo(1000));
+        assertThat(term(999), equalTo("999"));
+        assertThat(buffer.startOffset(999), equalTo(999));
+
+        final char[] arena = buffer.chars();
+        buffer.reset(false);
+        assertThat(buffer.size(), equalTo(0));
+        buffer.begin().append("reused").commit(URLPart.QUERY, 0, 6);
+        assertThat(term(0), equalTo("reused"));
+        assertThat("the character arena is reused after a reset", buffer.chars() == arena, equalTo(true));
+    }
+
+
+    @Test
+    public void testTypesAndFlags() {
+        buffer.reset(false);
+        buffer.begin().append("foo.com").commit(URLPart.HOST, 0, 7);
+        buffer.setFlags(URLPartAttribute.DECODED);
+        buffer.begin().append("a b").commit(URLPart.QUERY, 8, 13);
+        buffer.setFlags(0);
+        buffer.setMalformed();
+        buffer.begin().append("80").commit(URLPart.PORT, null, URLPartAttribute.SYNTHETIC, 0, 0);
+
+        assertThat(buffer.type(0), equalTo("host"));
+        assertThat(buffer.flags(0), equalTo(0));
+        assertThat(buffer.type(1), equalTo("query"));
+        assertThat(buffer.flags(1), equalTo(URLPartAttribute.DECODED));
+        assertThat(buffer.type(2), equalTo("port"));
+        assertThat(buffer.flags(2), equalTo(URLPartAttribute.SYNTHETIC | URLPartAttribute.MALFORMED));
+        assertThat(buffer.copy().flags(2), equalTo(URLPartAttribute.SYNTHETIC | URLPartAttribute.MALFORMED));
+    }
+
+
+    @Test
+    public void testRemoveAndReplace() {
+        buffer.reset(false);
+        buffer.begin().append("http").commit(URLPart.PROTOCOL, 0, 4);
+        buffer.begin().append("foo.com").commit(URLPart.HOST, 7, 14);
+        buffer.begin().append("/bar").commit(URLPart.PATH, 14, 18);
+        buffer.begin().append("q=1").commit(URLPart.QUERY, 19, 22);
+
+        buffer.remove(1);
+        assertThat(buffer.size(), equalTo(3));
+        assertThat(term(1), equalTo("/bar"));
+        assertThat(buffer.part(1), equalTo(URLPart.PATH));
+        assertThat(buffer.startOffset(1), equalTo(14));
+
+        buffer.truncateTerm(1, 2);
+        assertThat(term(1), equalTo("/b"));
+        assertThat(buffer.endOffset(1), equalTo(18));
+
+        buffer.begin().append("replaced");
+        buffer.replaceTerm(0, URLPartAttribute.SYNTHETIC);
+        assertThat(term(0), equalTo("replaced"));
+        assertThat(buffer.flags(0), equalTo(URLPartAttribute.SYNTHETIC));
+        assertThat(buffer.part(0), equalTo(URLPart.PROTOCOL));
+
+        buffer.truncate(2);
+        assertThat(buffer.size(), equalTo(2));
+        assertThat(term(1), equalTo("/b"));
+    }
+
+
+    @Test
+    public void testStackedPositions() {
+        buffer.reset(true);
+        buffer.begin().append("http").commit(URLPart.PROTOCOL, 0, 4);
+        buffer.setStacked(true);
+        buffer.begin().append("www.foo.com").commit(URLPart.HOST, 7, 18);
+        buffer.begin().append("foo.com").commit(URLPart.HOST, 11, 18);
+        buffer.begin().append("foo.com").commit(URLPart.HOST, 11, 18);
+        buffer.setStacked(true);
+        buffer.begin().append("/a").commit(URLPart.PATH, 18, 20);
+        buffer.begin().append("/a/b").commit(URLPart.PATH, 18, 22);
+        buffer.setStacked(false);
+        buffer.begin().append("q=1").commit(URLPart.QUERY, 23, 26);
+
+        assertThat(buffer.size(), equalTo(6));
+        assertThat(positionIncrements(), equalTo(new int[]{1, 1, 0, 1, 0, 1}));
+        assertThat(buffer.copy().positionIncrement(2), equalTo(0));
+
+        // a token stacked on a removed token takes over its position
+        buffer.remove(3);
+        assertThat(positionIncrements(), equalTo(new int[]{1, 1, 0, 1, 1}));
+        buffer.remove(2);
+        assertThat(positionIncrements(), equalTo(new int[]{1, 1, 1, 1}));
+    }
+
+
+    private int[] positionIncrements() {
+        final int[] positionIncrements = new int[buffer.size()];
+        for (int i = 0; i < positionIncrements.length; i++) {
+            positionIncrements[i] = buffer.positionIncrement(i);
+        }
+        return positionIncrements;
+    }
+
+
+    private String term(int token) {
+        return new String(buffer.chars(), buffer.termStart(token), buffer.termLength(token));
+    }
+}
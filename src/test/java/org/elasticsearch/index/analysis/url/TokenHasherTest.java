@@ -0,0 +1,53 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TokenHasherTest {
+    private final TokenHasher hasher = new TokenHasher();
+
+    @Test
+    public void testChunkedInput() {
+        final char[] url = "http://www.foo.bar.com:9200/index_name/type_name/_search.html?foo=bar&baz=bat#tag".toCharArray();
+        final long hash = hasher.reset().update(url, 0, url.length).hash();
+        assertThat(hasher.reset().update(url, 0, 10).update(url, 10, 0).update(url, 10, url.length - 10).hash(),
+                equalTo(hash));
+        assertThat(hasher.reset().update(url, 0, url.length - 1).hash(), not(equalTo(hash)));
+    }
+
+
+    @Test
+    public void testWideHash() {
+        final char[] url = "http://www.foo.bar.com/index_name/type_name".toCharArray();
+        final TokenHasher wideHasher = new TokenHasher(true);
+        wideHasher.reset().update(url, 0, url.length);
+        // the first 64 bits of a wide hash are the narrow hash
+        assertThat(wideHasher.hash(), equalTo(hasher.reset().update(url, 0, url.length).hash()));
+        final long wideHash = wideHasher.wideHash();
+        assertThat(wideHash, not(equalTo(wideHasher.hash())));
+        assertThat(wideHasher.reset().update(url, 0, 10).update(url, 10, url.length - 10).wideHash(),
+                equalTo(wideHash));
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void testNarrowHasherHasNoWideHash() {
+        hasher.reset().wideHash();
+    }
+
+
+    @Test
+    public void testAppendHex() {
+        final TokenBuffer tokens = new TokenBuffer();
+        tokens.reset(false);
+        tokens.begin();
+        TokenHasher.appendHex(0x0123456789abcdefL, tokens);
+        tokens.commit(URLPart.WHOLE, 0, 0);
+        assertThat(tokens.termLength(0), equalTo(TokenHasher.HEX_LENGTH));
+        assertThat(new String(tokens.chars(), tokens.termStart(0), tokens.termLength(0)), equalTo("0123456789abcdef"));
+    }
+}
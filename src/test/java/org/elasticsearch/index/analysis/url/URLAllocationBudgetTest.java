@@ -0,0 +1,138 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.elasticsearch.index.analysis.URLPart;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Guards against allocation regressions on the hot path. Each test analyzes a fixed corpus with a warmed up, reused
+ * {@link URLTokenizer} or {@link URLTokenFilter} and fails if the number of bytes allocated per url exceeds its budget.
+ *
+ * Each budget is the allocation measured on JDK 8 and 17 plus {@link #HEADROOM} bytes. The only garbage left is the
+ * {@link java.util.Iterator} created by looping over the configured list of parts: 24 bytes for a single part, and
+ * 48 to 56 bytes for malformed urls, whose parts are iterated through an unmodifiable list. Tokenizing all parts of a
+ * well formed url allocates nothing. Budgets should be lowered, never raised, as the hot path gets leaner.
+ */
+public class URLAllocationBudgetTest {
+    private static final String[] CORPUS = {
+            "http://www.foo.bar.com:9200/index_name/type_name/_search.html?foo=bar&baz=bat#tag",
+            "https://en.wikipedia.org/wiki/Uniform_Resource_Locator",
+            "https://www.example.com/search?q=foo%20bar&lang=en-US&page=2",
+            "http://192.168.1.20:8080/status",
+            "https://cdn.static.example.net/images/2017/08/logo.png",
+            "http://t.co/abc123",
+            "https://api.shop.example.co.uk/v1/cart/items?id=12345&session=IwAR2xK7Lw0&utm_source=google&utm_medium=cpc",
+            "ftp://files.example.org/pub/README"
+    };
+
+    private static final String[] MALFORMED_CORPUS = {
+            "foo.bar.com/baz/bat.html#whee?bob=loblaw&this=that",
+            "/baz/bat.html?bob=loblaw&this=that",
+            "example.com:8080/foo",
+            "://foo.com/bar",
+            "http://:::::::/baz"
+    };
+
+    private static final int WARMUP_ROUNDS = 5000;
+    private static final int MEASURED_ROUNDS = 1000;
+
+    /**
+     * Bytes per url allowed above the measured allocation of each test, for differences between JVMs
+     */
+    private static final long HEADROOM = 32;
+
+    private final ReusableStringReader reader = new ReusableStringReader();
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+    }
+
+
+    @Test
+    public void testTokenizeAllParts() throws IOException {
+        URLTokenizer tokenizer = new URLTokenizer();
+        assertBudget(tokenizer, tokenizer, CORPUS, HEADROOM);
+    }
+
+
+    @Test
+    public void testTokenizeSinglePart() throws IOException {
+        URLTokenizer tokenizer = new URLTokenizer(URLPart.PATH);
+        assertBudget(tokenizer, tokenizer, CORPUS, 24 + HEADROOM);
+    }
+
+
+    @Test
+    public void testTokenizeUrlDecode() throws IOException {
+        URLTokenizer tokenizer = new URLTokenizer(URLPart.QUERY);
+        tokenizer.setUrlDecode(true);
+        assertBudget(tokenizer, tokenizer, CORPUS, 24 + HEADROOM);
+    }
+
+
+    @Test
+    public void testTokenizeMalformed() throws IOException {
+        URLTokenizer tokenizer = new URLTokenizer();
+        tokenizer.setAllowMalformed(true);
+        tokenizer.setTokenizeMalformed(true);
+        assertBudget(tokenizer, tokenizer, MALFORMED_CORPUS, 56 + HEADROOM);
+    }
+
+
+    @Test
+    public void testFilter() throws IOException {
+        Tokenizer tokenizer = new KeywordTokenizer();
+        URLTokenFilter filter = new URLTokenFilter(tokenizer, URLPart.HOST, false, false, true);
+        assertBudget(tokenizer, filter, CORPUS, 24 + HEADROOM);
+    }
+
+
+    /**
+     * Analyze the given corpus, and assert that the number of bytes allocated per url does not exceed the given budget
+     * @param tokenizer the tokenizer which receives each url
+     * @param stream the stream to be consumed
+     * @param corpus urls to be analyzed
+     * @param budget maximum number of bytes which may be allocated per url
+     */
+    private void assertBudget(Tokenizer tokenizer, TokenStream stream, String[] corpus, long budget) throws IOException {
+        analyze(tokenizer, stream, corpus, WARMUP_ROUNDS);
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        analyze(tokenizer, stream, corpus, MEASURED_ROUNDS);
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        final long perUrl = allocated / ((long) MEASURED_ROUNDS * corpus.length);
+        assertThat("bytes allocated per url", perUrl, lessThanOrEqualTo(budget));
+    }
+
+
+    private void analyze(Tokenizer tokenizer, TokenStream stream, String[] corpus, int rounds) throws IOException {
+        for (int i = 0; i < rounds; i++) {
+            for (String url : corpus) {
+                reader.setValue(url);
+                tokenizer.setReader(reader);
+                stream.reset();
+                while (stream.incrementToken()) {
+                    // consume all tokens
+                }
+                stream.end();
+                stream.close();
+            }
+        }
+    }
+}
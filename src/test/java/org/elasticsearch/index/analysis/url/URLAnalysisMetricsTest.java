@@ -0,0 +1,92 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class URLAnalysisMetricsTest {
+    @Test
+    public void testRecordTokens() throws IOException {
+        URLAnalysisMetrics metrics = new URLAnalysisMetrics();
+        URLTokenExtractor extractor = new URLTokenExtractor();
+        extractor.setMetrics(metrics);
+
+        tokenize(extractor, "http://www.foo.com:9200/bar?baz=bat");
+        tokenize(extractor, "https://foo.com/");
+
+        assertThat(metrics.getUrls(), equalTo(2L));
+        assertThat(metrics.getTokens(URLPart.PROTOCOL), equalTo(2L));
+        assertThat(metrics.getTokens(URLPart.HOST), equalTo(5L));
+        assertThat(metrics.getTokens(URLPart.PORT), equalTo(2L));
+        assertThat(metrics.getTokens(URLPart.QUERY), equalTo(1L));
+        assertThat(metrics.getMalformed(), equalTo(0L));
+        assertThat(metrics.getCacheHits(), equalTo(0L));
+        assertThat(metrics.getAnalysisNanos(), greaterThan(0L));
+    }
+
+
+    @Test
+    public void testRecordFailures() throws IOException {
+        URLAnalysisMetrics metrics = new URLAnalysisMetrics();
+        URLTokenExtractor extractor = new URLTokenExtractor();
+        extractor.setPart(URLPart.QUERY);
+        extractor.setUrlDecode(true);
+        extractor.setMetrics(metrics);
+
+        tokenizeRejected(extractor, "foo.com/bar");
+        tokenizeRejected(extractor, "http://foo.com?baz=foo%2vbat");
+        extractor.setAllowMalformed(true);
+        tokenize(extractor, "foo.com/bar?baz=bat");
+        tokenize(extractor, "http://foo.com?baz=foo%2vbat");
+
+        assertThat(metrics.getUrls(), equalTo(4L));
+        assertThat(metrics.getMalformed(), equalTo(2L));
+        assertThat(metrics.getDecodeFailures(), equalTo(2L));
+        assertThat(metrics.getTokens(URLPart.QUERY), equalTo(1L));
+    }
+
+
+    @Test
+    public void testRecordCacheHits() throws IOException {
+        URLAnalysisMetrics metrics = new URLAnalysisMetrics();
+        URLTokenExtractor extractor = new URLTokenExtractor();
+        extractor.setCache(new URLTokenCache(1 << 20, 1));
+        extractor.setMetrics(metrics);
+
+        tokenize(extractor, "http://foo.com/bar");
+        tokenize(extractor, "http://foo.com/bar");
+
+        assertThat(metrics.getUrls(), equalTo(2L));
+        assertThat(metrics.getCacheHits(), equalTo(1L));
+        assertThat(metrics.getTokens(URLPart.PATH), equalTo(2L));
+    }
+
+
+    @Test
+    public void testStats() {
+        URLAnalysisStats stats = new URLAnalysisStats();
+        URLAnalysisMetrics metrics = stats.metrics("index", URLAnalysisStats.TOKENIZERS, "url_host");
+        assertThat(stats.metrics("index", URLAnalysisStats.TOKENIZERS, "url_host"), sameInstance(metrics));
+        assertThat(stats.indices().get("index").get(URLAnalysisStats.TOKENIZERS).get("url_host"), sameInstance(metrics));
+
+        stats.removeIndex("index");
+        assertThat(stats.indices().isEmpty(), equalTo(true));
+    }
+
+
+    private static void tokenize(URLTokenExtractor extractor, String url) throws IOException {
+        extractor.tokenize(url.toCharArray(), url.length());
+    }
+
+
+    private static void tokenizeRejected(URLTokenExtractor extractor, String url) throws IOException {
+        assertThat("expected [" + url + "] to be rejected", extractor.tokenize(url.toCharArray(), url.length()),
+                equalTo(false));
+    }
+}
@@ -0,0 +1,112 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.plugin.analysis.AnalysisURLPlugin;
+import org.elasticsearch.plugins.PluginsService;
+import org.elasticsearch.rest.AbstractRestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.rest.FakeRestRequest;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Analyzes urls through the cluster, and reads back the stats recorded for them from the
+ * <code>/_url_analysis/stats</code> endpoint of the node which analyzed them
+ */
+@ESIntegTestCase.ClusterScope(scope = ESIntegTestCase.Scope.SUITE, numDataNodes = 1, numClientNodes = 0,
+        supportsDedicatedMasters = false)
+public class URLAnalysisStatsIntegrationTest extends URLAnalysisTestCase {
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return Settings.builder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put(AnalysisURLPlugin.STATS_ENABLED_SETTING.getKey(), true)
+                .put(AnalysisURLPlugin.CACHE_SIZE_SETTING.getKey(), "1mb")
+                .build();
+    }
+
+
+    @Test
+    public void testDefaultSettings() {
+        assertThat(AnalysisURLPlugin.STATS_ENABLED_SETTING.get(Settings.EMPTY), equalTo(false));
+        assertThat(AnalysisURLPlugin.CACHE_SIZE_SETTING.get(Settings.EMPTY).getBytes(), equalTo(0L));
+    }
+
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStats() throws Exception {
+        analyzeURL("http://www.foo.bar.com/baz", "tokenizer_url_host");
+        analyzeURL("http://foo.com/bat", "tokenizer_url_host");
+        analyzeURL("http://foo.com/bat", "url_host");
+
+        final Map<String, Object> stats = getStats();
+        assertThat(stats, hasKey("cache"));
+        final Map<String, Object> cache = (Map<String, Object>) stats.get("cache");
+        assertThat(cache.get("size_in_bytes"), notNullValue());
+
+        final Map<String, Object> index = (Map<String, Object>) ((Map<String, Object>) stats.get("indices")).get(INDEX);
+        final Map<String, Object> tokenizer = (Map<String, Object>) ((Map<String, Object>) index.get("tokenizers"))
+                .get("url_host");
+        assertThat(tokenizer.get("urls"), equalTo(2));
+        assertThat(tokenizer.get("malformed"), equalTo(0));
+        // www.foo.bar.com, foo.bar.com, bar.com, com, foo.com, com
+        assertThat(((Map<String, Object>) tokenizer.get("tokens")).get("host"), equalTo(6));
+        assertThat(((Map<String, Object>) tokenizer.get("tokens")).get("path"), equalTo(0));
+
+        final Map<String, Object> filter = (Map<String, Object>) ((Map<String, Object>) index.get("filters"))
+                .get("url_host");
+        assertThat(filter.get("urls"), equalTo(1));
+        assertThat(((Map<String, Object>) filter.get("tokens")).get("host"), equalTo(1));
+    }
+
+
+    private Map<String, Object> getStats() throws Exception {
+        final RestRequest request = new FakeRestRequest.Builder(NamedXContentRegistry.EMPTY)
+                .withMethod(RestRequest.Method.GET)
+                .withPath("/_url_analysis/stats")
+                .build();
+        // the node's own rest controller is not exposed, so the plugin's handlers are registered with a new one
+        final RestController controller = new RestController(Settings.EMPTY, Collections.emptySet(), null, null,
+                new NoneCircuitBreakerService());
+        final AnalysisURLPlugin plugin = internalCluster().getInstance(PluginsService.class)
+                .filterPlugins(AnalysisURLPlugin.class).get(0);
+        plugin.getRestHandlers(Settings.EMPTY, controller, null, null, null, null, null);
+        final CapturingRestChannel channel = new CapturingRestChannel(request);
+        final ThreadContext threadContext = internalCluster().getInstance(ThreadPool.class).getThreadContext();
+        controller.dispatchRequest(request, channel, threadContext);
+        assertThat(channel.response, notNullValue());
+        assertThat(channel.response.status(), equalTo(RestStatus.OK));
+        return XContentHelper.convertToMap(channel.response.content(), false, XContentType.JSON).v2();
+    }
+
+
+    private static final class CapturingRestChannel extends AbstractRestChannel {
+        private RestResponse response;
+
+        private CapturingRestChannel(RestRequest request) {
+            super(request, true);
+        }
+
+        @Override
+        public void sendResponse(RestResponse response) {
+            this.response = response;
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package org.elasticsearch.index.analysis.url;
 
 import org.elasticsearch.action.admin.indices.analyze.AnalyzeResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
 import org.elasticsearch.plugin.analysis.AnalysisURLPlugin;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.test.ESIntegTestCase;
 import org.elasticsearch.test.StreamsUtils;
 import org.junit.Before;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
 
 /**
  * Joe Linn
@@ -19,12 +29,40 @@ public abstract class URLAnalysisTestCase extends ESIntegTestCase {
     protected static final String INDEX = "url_token_filter";
     protected static final String TYPE = "test";
 
+    /**
+     * Files read from the config directory by the filters of test-settings.json
+     */
+    private static final String[] CONFIG_FILES = {"url-domains.txt", "url-categories.txt"};
+
 
     @Override
     protected Collection<Class<? extends Plugin>> nodePlugins() {
         return Collections.singletonList(AnalysisURLPlugin.class);
     }
 
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return Settings.builder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put(Environment.PATH_CONF_SETTING.getKey(), createConfigDir().toString())
+                .build();
+    }
+
+
+    private static Path createConfigDir() {
+        final Path configDir = createTempDir();
+        try {
+            for (String file : CONFIG_FILES) {
+                try (InputStream in = URLAnalysisTestCase.class.getResourceAsStream("/config/" + file)) {
+                    Files.copy(in, configDir.resolve(file));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return configDir;
+    }
+
     /**
      * For subclasses to override. Overrides must call {@code super.setUp()}.
      */
@@ -42,4 +80,16 @@ public abstract class URLAnalysisTestCase extends ESIntegTestCase {
     protected List<AnalyzeResponse.AnalyzeToken> analyzeURL(String url, String analyzer) {
         return client().admin().indices().prepareAnalyze(INDEX, url).setAnalyzer(analyzer).get().getTokens();
     }
+
+
+    /**
+     * Assert that the given url is analyzed into exactly the given terms, in order
+     * @return the tokens of the url
+     */
+    protected List<AnalyzeResponse.AnalyzeToken> assertAnalyzesTo(String url, String analyzer, String... expected) {
+        List<AnalyzeResponse.AnalyzeToken> tokens = analyzeURL(url, analyzer);
+        assertThat(tokens.stream().map(AnalyzeResponse.AnalyzeToken::getTerm).collect(Collectors.toList()),
+                contains(expected));
+        return tokens;
+    }
 }
@@ -0,0 +1,35 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.analysis.BaseTokenStreamTestCase;
+import org.apache.lucene.analysis.CannedTokenStream;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.index.analysis.URLPart;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class URLCanonicalizeFilterTest extends BaseTokenStreamTestCase {
+    @Test
+    public void testCanonicalize() throws IOException {
+        final String url = "HTTP://WWW.Foo.com:80/a/./b/../c?z=1&a=2&";
+        TokenStream filter = new URLCanonicalizeFilter(new CannedTokenStream(new Token(url, 0, url.length()),
+                new Token("not a url", 42, 51)));
+        assertTokenStreamContents(filter, new String[]{"http://www.foo.com/a/c?a=2&z=1", "not a url"},
+                new int[]{0, 42}, new int[]{url.length(), 51});
+    }
+
+
+    @Test
+    public void testSpellingsProduceSameTokens() throws IOException {
+        final String[] expected = {"www.foo.com", "foo.com", "com", "/a", "/a/c"};
+        for (String url : new String[]{"http://www.foo.com/a/c", "http://WWW.FOO.COM:80/a/b/../c",
+                "http://www.foo.com/a/./c?"}) {
+            TokenStream filter = new URLTokenFilter(new URLCanonicalizeFilter(
+                    new CannedTokenStream(new Token(url, 0, url.length()))), null)
+                    .setParts(Arrays.asList(URLPart.HOST, URLPart.PATH));
+            assertTokenStreamContents(filter, expected);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.analysis.BaseTokenStreamTestCase;
+import org.apache.lucene.analysis.CannedTokenStream;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class URLCategoryFilterTest extends BaseTokenStreamTestCase {
+    private static final String RULES = "example.com news\n" +
+            "example.com/sports news,sports\n";
+
+    @Test
+    public void testCategories() throws IOException {
+        final String url = "https://www.example.com/sports/today.html";
+        final String other = "http://foo.com/";
+        TokenStream filter = new URLCategoryFilter(new CannedTokenStream(new Token(url, 0, url.length()),
+                new Token("not a url", 50, 59), new Token(other, 60, 60 + other.length())),
+                CategoryDictionary.parse("test", new StringReader(RULES)), "category:");
+        assertTokenStreamContents(filter,
+                new String[]{url, "category:news", "category:sports", "not a url", other},
+                new int[]{0, 0, 0, 50, 60},
+                new int[]{url.length(), url.length(), url.length(), 59, 60 + other.length()},
+                new String[]{"word", URLCategoryFilter.CATEGORY_TYPE, URLCategoryFilter.CATEGORY_TYPE, "word", "word"},
+                new int[]{1, 0, 0, 1, 1});
+    }
+
+
+    @Test
+    public void testPrefix() throws IOException {
+        final String url = "http://example.com/";
+        TokenStream filter = new URLCategoryFilter(new CannedTokenStream(new Token(url, 0, url.length())),
+                CategoryDictionary.parse("test", new StringReader(RULES)), "cat_");
+        assertTokenStreamContents(filter, new String[]{url, "cat_news"});
+    }
+}
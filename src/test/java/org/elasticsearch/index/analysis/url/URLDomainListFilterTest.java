@@ -0,0 +1,64 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.apache.lucene.analysis.BaseTokenStreamTestCase;
+import org.apache.lucene.analysis.CannedTokenStream;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.index.analysis.DomainListMode;
+import org.elasticsearch.index.analysis.URLPart;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class URLDomainListFilterTest extends BaseTokenStreamTestCase {
+    private static final String BLOCKED = "http://ads.example.com/banner.gif";
+    private static final String ALLOWED = "https://www.foo.com/index.html";
+
+    @Test
+    public void testDrop() throws IOException {
+        assertTokenStreamContents(createFilter(DomainListMode.DROP), new String[]{ALLOWED, "foo.com"},
+                null, null, null, new int[]{2, 2});
+    }
+
+
+    @Test
+    public void testKeep() throws IOException {
+        assertTokenStreamContents(createFilter(DomainListMode.KEEP), new String[]{BLOCKED, "example.com"},
+                null, null, null, new int[]{1, 2});
+    }
+
+
+    @Test
+    public void testTag() throws IOException {
+        final int blockedLength = BLOCKED.length();
+        assertTokenStreamContents(createFilter(DomainListMode.TAG),
+                new String[]{BLOCKED, "blocked", ALLOWED, "example.com", "blocked", "foo.com"},
+                new int[]{0, 0, 100, 200, 200, 300},
+                new int[]{blockedLength, blockedLength, 100 + ALLOWED.length(), 211, 211, 307},
+                new String[]{"word", URLDomainListFilter.TAG_TYPE, "word", "word", URLDomainListFilter.TAG_TYPE, "word"},
+                new int[]{1, 0, 1, 1, 0, 1});
+    }
+
+
+    @Test
+    public void testTagHosts() throws IOException {
+        final String url = "http://cdn.example.com/a.js";
+        TokenStream filter = new URLDomainListFilter(
+                new URLTokenFilter(new CannedTokenStream(new Token(url, 0, url.length())), URLPart.HOST),
+                domainList(), DomainListMode.TAG, "blocked");
+        assertTokenStreamContents(filter, new String[]{"cdn.example.com", "blocked", "example.com", "blocked", "com"});
+    }
+
+
+    private static URLDomainListFilter createFilter(DomainListMode mode) throws IOException {
+        return new URLDomainListFilter(new CannedTokenStream(new Token(BLOCKED, 0, BLOCKED.length()),
+                new Token(ALLOWED, 100, 100 + ALLOWED.length()), new Token("example.com", 200, 211),
+                new Token("foo.com", 300, 307)), domainList(), mode, "blocked");
+    }
+
+
+    private static DomainList domainList() throws IOException {
+        return DomainList.parse("test", new StringReader("example.com\n"));
+    }
+}
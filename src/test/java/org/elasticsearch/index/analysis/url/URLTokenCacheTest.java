@@ -0,0 +1,126 @@
+package org.elasticsearch.index.analysis.url;
+
+import org.elasticsearch.index.analysis.URLPart;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class URLTokenCacheTest {
+    private static final String URL = "http://www.foo.bar.com:9200/index_name/type_name/_search.html?foo=bar&baz=bat#tag";
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        URLTokenCache cache = new URLTokenCache(1 << 20, 1);
+        URLTokenExtractor extractor = new URLTokenExtractor();
+        extractor.setCache(cache);
+
+        List<String> expected = tokenize(new URLTokenExtractor(), URL);
+        assertThat(tokenize(extractor, URL), equalTo(expected));
+        assertThat(tokenize(extractor, URL), equalTo(expected));
+
+        URLTokenCache.Stats stats = cache.stats();
+        assertThat(stats.getMisses(), equalTo(1L));
+        assertThat(stats.getHits(), equalTo(1L));
+        assertThat(stats.getCount(), equalTo(1L));
+        assertThat(stats.getSizeInBytes(), greaterThan(0L));
+    }
+
+
+    @Test
+    public void testEntriesAreKeyedByOptions() throws IOException {
+        URLTokenCache cache = new URLTokenCache(1 << 20, 1);
+        URLTokenExtractor host = new URLTokenExtractor();
+        host.setPart(URLPart.HOST);
+        host.setCache(cache);
+        URLTokenExtractor path = new URLTokenExtractor();
+        path.setPart(URLPart.PATH);
+        path.setCache(cache);
+
+        tokenize(host, URL);
+        assertThat(tokenize(path, URL).get(0), equalTo("/index_name@27-38:PATH"));
+        assertThat(tokenize(host, URL).get(0), equalTo("www.foo.bar.com@7-22:HOST"));
+        assertThat(cache.stats().getHits(), equalTo(1L));
+
+        // changing an option must not return tokens produced with the previous options
+        host.setTokenizeHost(false);
+        tokenize(host, URL);
+        assertThat(cache.stats().getHits(), equalTo(1L));
+    }
+
+
+    @Test
+    public void testSizeIsBounded() throws IOException {
+        final long maxSize = 64 * 1024;
+        URLTokenCache cache = new URLTokenCache(maxSize, 1);
+        URLTokenExtractor extractor = new URLTokenExtractor();
+        extractor.setCache(cache);
+        for (int i = 0; i < 10000; i++) {
+            tokenize(extractor, "http://foo" + i + ".com/bar/" + i + "?baz=" + i);
+        }
+        URLTokenCache.Stats stats = cache.stats();
+        assertThat(stats.getSizeInBytes(), lessThanOrEqualTo(maxSize));
+        assertThat(stats.getEvictions(), greaterThan(0L));
+        assertThat(stats.getCount() + stats.getEvictions(), equalTo(10000L));
+    }
+
+
+    @Test
+    public void testFrequentEntriesAreRetained() throws IOException {
+        URLTokenCache cache = new URLTokenCache(64 * 1024, 1);
+        URLTokenExtractor extractor = new URLTokenExtractor();
+        extractor.setCache(cache);
+        for (int i = 0; i < 10; i++) {
+            tokenize(extractor, URL);
+        }
+        // a scan of urls which are only seen once must not displace a popular url
+        for (int i = 0; i < 10000; i++) {
+            tokenize(extractor, "http://foo" + i + ".com/bar/" + i + "?baz=" + i);
+        }
+        final long hits = cache.stats().getHits();
+        tokenize(extractor, URL);
+        assertThat(cache.stats().getHits(), equalTo(hits + 1));
+    }
+
+
+    @Test
+    public void testConfigIdsAreBounded() throws IOException {
+        URLTokenCache cache = new URLTokenCache(1 << 20, 1);
+        URLTokenExtractor extractor = new URLTokenExtractor();
+        extractor.setCache(cache);
+        List<String> expected = tokenize(new URLTokenExtractor(), URL);
+        tokenize(extractor, URL);
+
+        final int first = cache.configId("options 0");
+        assertThat(cache.configId("options 0"), equalTo(first));
+        for (int i = 1; i < 10 * URLTokenCache.MAX_CONFIG_IDS; i++) {
+            assertThat(cache.configId("options " + i), greaterThan(first));
+            assertThat(cache.configCount(), lessThanOrEqualTo(URLTokenCache.MAX_CONFIG_IDS));
+        }
+        // released ids are not reused, so the options are given a new id
+        assertThat(cache.configId("options 0"), greaterThan(first));
+
+        // tokenizers which still hold a released id keep using their cached entries
+        final long hits = cache.stats().getHits();
+        assertThat(tokenize(extractor, URL), equalTo(expected));
+        assertThat(cache.stats().getHits(), equalTo(hits + 1));
+    }
+
+
+    private static List<String> tokenize(URLTokenExtractor extractor, String url) throws IOException {
+        extractor.tokenize(url.toCharArray(), url.length());
+        TokenBuffer tokens = extractor.tokens();
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            result.add(new String(tokens.chars(), tokens.termStart(i), tokens.termLength(i)) + "@"
+                    + tokens.startOffset(i) + "-" + tokens.endOffset(i) + ":" + tokens.part(i));
+        }
+        return result;
+    }
+}
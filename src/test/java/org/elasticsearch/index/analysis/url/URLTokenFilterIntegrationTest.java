@@ -91,6 +91,80 @@ public class URLTokenFilterIntegrationTest extends URLAnalysisTestCase {
         assertEquals("both docs indexed", 2, hits.getTotalHits());
     }
 
+    @Test
+    public void testCanonicalize() {
+        assertURLAnalyzesTo("HTTP://WWW.Foo.com:80/a/./b/../c?", "url_canonicalize", "http://www.foo.com/a/c");
+    }
+
+
+    @Test
+    public void testPublicSuffix() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = assertAnalyzesTo("http://www.foo.co.uk/bar",
+                "url_host_public_suffix", "www.foo.co.uk", "foo.co.uk", "co.uk");
+        assertThat(tokens.get(1).getType(), equalTo("registered_domain"));
+        assertThat(tokens.get(2).getType(), equalTo("public_suffix"));
+    }
+
+
+    @Test
+    public void testQueryParams() {
+        assertAnalyzesTo("http://foo.com/?q=1&utm_source=x&utm_medium=y&p=2", "url_query_params",
+                "q=1", "utm_medium=y");
+    }
+
+
+    @Test
+    public void testHostOrder() {
+        assertURLAnalyzesTo("http://www.foo.bar.com/baz", "url_host_reversed", "com.bar.foo.www");
+    }
+
+
+    @Test
+    public void testPathMode() {
+        assertAnalyzesTo("http://foo.com/a/b/c.html", "url_path_segments", "a", "b", "c.html");
+    }
+
+
+    @Test
+    public void testDomainList() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = assertAnalyzesTo("http://www.blocked.com/foo", "url_host_blocked",
+                "www.blocked.com", "blocked");
+        assertThat(tokens.get(1).getType(), equalTo("domain_list"));
+        assertThat(tokens.get(1).getPosition(), equalTo(tokens.get(0).getPosition()));
+        assertURLAnalyzesTo("http://www.foo.com/blocked.com", "url_host_blocked", "www.foo.com");
+    }
+
+
+    @Test
+    public void testCategory() {
+        final String url = "https://www.example.com/sports/today.html";
+        List<AnalyzeResponse.AnalyzeToken> tokens = assertAnalyzesTo(url, "url_category", url, "category:news",
+                "category:sports");
+        assertThat(tokens.get(1).getType(), equalTo("category"));
+        assertThat(tokens.get(2).getPosition(), equalTo(tokens.get(0).getPosition()));
+        assertAnalyzesTo("https://www.example.com/news", "url_category",
+                "https://www.example.com/news", "category:news");
+        assertURLAnalyzesTo("https://www.example.net/sports", "url_category", "https://www.example.net/sports");
+    }
+
+
+    @Test
+    public void testPrefixLengths() {
+        assertAnalyzesTo("http://192.168.1.20/foo", "url_host_cidr",
+                "192.168.1.20", "192.168.1.0/24", "192.168.0.0/16");
+    }
+
+
+    @Test
+    public void testHashMode() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = analyzeURL("http://www.foo.com/a/c", "url_hash");
+        assertThat(tokens, hasSize(1));
+        assertThat(tokens.get(0).getType(), equalTo("hash"));
+        // urls differing only in their scheme, port, or query string share a host_path hash
+        assertURLAnalyzesTo("https://www.foo.com:8443/a/c?q=1", "url_hash", tokens.get(0).getTerm());
+    }
+
+
     private void assertURLAnalyzesTo(String url, String analyzer, String expected) {
         List<AnalyzeResponse.AnalyzeToken> tokens = analyzeURL(url, analyzer);
         assertThat("a URL part was parsed", tokens, hasSize(1));
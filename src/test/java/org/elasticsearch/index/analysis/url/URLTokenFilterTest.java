@@ -104,6 +104,30 @@ public class URLTokenFilterTest extends BaseTokenStreamTestCase {
         assertTokenStreamContents(filter, "3456");
     }
 
+    @Test
+    public void testMalformedParseResult() throws IOException {
+        // the parts of a recoverable url are tokenized leniently
+        URLTokenFilter filter = createFilter("/bar#baz", URLPart.REF, false, true);
+        filter.setTokenizeMalformed(true);
+        assertTokenStreamContents(filter, "baz");
+
+        // garbage has no parts to recover, and is passed through as a single token
+        filter = createFilter("bar#baz", URLPart.REF, false, true);
+        filter.setTokenizeMalformed(true);
+        assertTokenStreamContents(filter, "bar#baz");
+
+        TokenStream input = new CannedTokenStream(new Token("/bar#baz", 0, 8), new Token("bar#baz", 9, 16));
+        filter = new URLTokenFilter(input, URLPart.REF, false, false, true).setTokenizeMalformed(true);
+        assertTokenStreamContents(filter, new String[]{"baz", "bar#baz"});
+    }
+
+    @Test
+    public void testMultipleInputTokens() throws IOException {
+        TokenStream input = new CannedTokenStream(new Token("http://foo.com/bar", 0, 18), new Token("https://baz.com:9200", 19, 39));
+        URLTokenFilter filter = new URLTokenFilter(input, URLPart.HOST, false, false, true).setTokenizeHost(false);
+        assertTokenStreamContents(filter, new String[]{"foo.com", "baz.com"}, new int[]{7, 27}, new int[]{14, 34});
+    }
+
     private URLTokenFilter createFilter(final String url, final URLPart part) {
         return createFilter(url, part, false);
     }
@@ -98,6 +98,53 @@ public class URLTokenizerIntegrationTest extends URLAnalysisTestCase {
     }
 
 
+    @Test
+    public void testPublicSuffix() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = assertAnalyzesTo("http://www.foo.co.uk/bar",
+                "tokenizer_url_host_public_suffix", "www.foo.co.uk", "foo.co.uk", "co.uk");
+        assertThat(tokens.get(1).getType(), equalTo("registered_domain"));
+        assertThat(tokens.get(2).getType(), equalTo("public_suffix"));
+    }
+
+
+    @Test
+    public void testQueryParams() {
+        assertAnalyzesTo("http://foo.com/?q=1&utm_source=x&utm_medium=y&p=2", "tokenizer_url_query_params",
+                "q=1", "utm_medium=y");
+    }
+
+
+    @Test
+    public void testHostOrder() {
+        assertAnalyzesTo("http://www.foo.bar.com/baz", "tokenizer_url_host_reversed", "com.bar.foo.www");
+    }
+
+
+    @Test
+    public void testPathMode() {
+        assertAnalyzesTo("http://foo.com/a/b/c.html", "tokenizer_url_path_segments", "a", "b", "c.html");
+    }
+
+
+    @Test
+    public void testPrefixLengths() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = assertAnalyzesTo("http://192.168.1.20/foo",
+                "tokenizer_url_host_cidr", "192.168.1.20", "192.168.1.0/24", "192.168.0.0/16");
+        assertThat(tokens.get(1).getType(), equalTo("cidr"));
+        assertTokensContain("http://[2001:db8::1]/foo", "tokenizer_url_host_cidr", "2001:db8::/32");
+    }
+
+
+    @Test
+    public void testHashMode() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = analyzeURL("http://www.foo.com/a/c", "tokenizer_url_hash");
+        assertThat(tokens, hasSize(1));
+        assertThat(tokens.get(0).getType(), equalTo("hash"));
+        // different spellings of the same url share a canonical hash
+        assertAnalyzesTo("HTTP://WWW.Foo.com:80/a/./b/../c?", "tokenizer_url_hash", tokens.get(0).getTerm());
+    }
+
+
     private List<AnalyzeResponse.AnalyzeToken> assertTokensContain(String url, String analyzer, String... expected) {
         List<AnalyzeResponse.AnalyzeToken> tokens = analyzeURL(url, analyzer);
         for (String e : expected) {
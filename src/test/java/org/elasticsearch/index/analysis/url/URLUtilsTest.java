@@ -3,6 +3,8 @@ package org.elasticsearch.index.analysis.url;
 import org.elasticsearch.index.analysis.URLPart;
 import org.junit.Test;
 
+import java.net.URL;
+
 import static org.elasticsearch.index.analysis.url.OptionalMatchers.hasValue;
 import static org.elasticsearch.index.analysis.url.OptionalMatchers.isEmpty;
 import static org.elasticsearch.index.analysis.url.URLUtils.getPart;
@@ -69,4 +71,19 @@ public class URLUtilsTest {
         assertThat(getPart(URL_3, part), hasValue(equalTo("bob=loblaw&this=that")));
         assertThat(getPart(URL_4, part), hasValue(equalTo("bob=loblaw&this=that")));
     }
-}
\ No newline at end of file
+
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testGetPartOfURL() throws Exception {
+        final URL url = new URL("https://foo.bar.com/baz/bat.html?bob=loblaw#whee");
+        assertThat(getPart(url, URLPart.PROTOCOL), equalTo("https"));
+        assertThat(getPart(url, URLPart.HOST), equalTo("foo.bar.com"));
+        assertThat(getPart(url, URLPart.PORT), equalTo("443"));
+        assertThat(getPart(url, URLPart.PATH), equalTo("/baz/bat.html"));
+        assertThat(getPart(url, URLPart.QUERY), equalTo("bob=loblaw"));
+        assertThat(getPart(url, URLPart.REF), equalTo("whee"));
+        assertThat(URLUtils.getPort(new URL("http://foo.com:9200/")), equalTo("9200"));
+        assertThat(URLUtils.getPort(new URL("ftp://foo.com/")), equalTo(null));
+    }
+}